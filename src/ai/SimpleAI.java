@@ -1,24 +1,42 @@
 package ai;
 
+import buildings.Building;
 import buildings.BuildingType;
+import game.FogOfWar;
 import game.GameContext;
+import game.MoveRange;
 import map.GameMap;
+import map.Passability;
 import map.Position;
-import map.Tile;
 import map.TileType;
+import map.path.FlowField;
+import map.path.HierarchicalPathfinder;
+import map.path.Pathfinder;
 import player.Player;
 import units.Unit;
 import units.UnitType;
 
 import java.util.*;
+import java.util.function.IntConsumer;
 
 public class SimpleAI implements AIController {
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+    // From here on a flow field or a full search costs more than planning on the cluster graph
+    private static final long HIERARCHICAL_TILES = 1024 * 1024;
+    // How far a scout looks for unexplored ground before just heading for the far side of the map
+    private static final int EXPLORE_DISTANCE = 64;
+
     private final Random rng = new Random();
+    private final CastleGoal castleGoal = new CastleGoal();
+    private final TileGoal tileGoal = new TileGoal();
+    private final UnitFilter unitFilter = new UnitFilter();
+    private final FieldPick fieldPick = new FieldPick();
+    private final Unexplored unexplored = new Unexplored();
 
     @Override
     public void playTurn(GameContext ctx) {
         Player enemy = ctx.getEnemy();
-        Player human = ctx.getHuman();
 
         // ONE action per AI turn: build OR train OR unit-action
         if (tryBuild(ctx, enemy)) return;
@@ -43,38 +61,42 @@ public class SimpleAI implements AIController {
             return;
         }
 
-        // Otherwise move as the single action
-        Position humanCastle = ctx.findBuildingTopLeft(human, BuildingType.CASTLE);
-        if (humanCastle == null) return;
-
-        int steps = (u.getType() == UnitType.CAVALRY) ? 2 : 1;
-        Position step = nextStepTowardCastleWithBFS(ctx, from, humanCastle, steps);
+        // Otherwise move as the single action. The AI knows the lie of the land but not where the castle is: it
+        // marches on one it has seen, and scouts for one until then.
+        Building castle = ctx.nearestKnownEnemyBuilding(enemy, from, BuildingType.CASTLE);
+        Position step = castle == null || castle.getPosition() == null
+                ? nextStepToExplore(ctx, enemy, u, from)
+                : nextStepTowardCastle(ctx, u, from, castle);
         if (step != null) ctx.moveUnit(enemy, from, step);
     }
 
-    private boolean tryTrain(GameContext ctx, Player enemy) {
-        Position spawn = ctx.findBarracksSpawn(enemy, false);
-        if (spawn == null) return false;
+    // Toward the nearest tile the AI has not explored yet; with none nearby, as far across the map as it can
+    private Position nextStepToExplore(GameContext ctx, Player enemy, Unit u, Position start) {
+        MoveRange range = ctx.getMoveRange(u);
+        if (range.isEmpty()) return null;
+        GameMap map = ctx.getMap();
+        unexplored.set(map, ctx.getFog(), enemy, start);
+        unitFilter.ctx = ctx;
+        unitFilter.unit = u;
+        return searchStep(ctx, map.index(start.x, start.y), unexplored, EXPLORE_DISTANCE, range);
+    }
 
-        UnitType pick = switch (rng.nextInt(3)) {
+    private boolean tryTrain(GameContext ctx, Player enemy) {
+        UnitType pick = switch (rng.nextInt(4)) {
             case 0 -> UnitType.SOLDIER;
             case 1 -> UnitType.ARCHER;
-            default -> UnitType.CAVALRY;
+            case 2 -> UnitType.CAVALRY;
+            default -> UnitType.SIEGE;
         };
 
+        Position spawn = ctx.findBarracksSpawn(enemy, false, pick.getSize());
+        if (spawn == null) return false;
+
         Unit u = ctx.createUnit(pick, enemy);
 
-        // Only train if affordable and tile is free (single action)
+        // Only train if affordable and the footprint is free (single action)
         if (!ctx.getEconomy().trySpend(enemy, u.getCost())) return false;
-        if (!ctx.isFreeForUnit(spawn, false)) return false;
-
-        Tile t = ctx.getMap().getTile(spawn.x, spawn.y);
-        if (t == null) return false;
-
-        t.setUnit(u);
-        u.setPos(spawn);
-        enemy.addUnit(u);
-        return true;
+        return ctx.spawnUnit(u, spawn);
     }
 
     private boolean tryBuild(GameContext ctx, Player enemy) {
@@ -105,18 +127,10 @@ public class SimpleAI implements AIController {
         if (b == null) return false;
 
         // Find a valid placement FIRST, then spend (prevents losing resources if no spot)
-        Position spot = null;
-        for (int y = 0; y < ctx.getMap().getHeight(); y++) {
-            for (int x = 0; x < ctx.getMap().getWidth(); x++) {
-                Position p = new Position(x, y);
-                if (ctx.canPlaceBuilding(b, p, enemy)) {
-                    spot = p;
-                    break;
-                }
-            }
-            if (spot != null) break;
-        }
-        if (spot == null) return false;
+        GameMap map = ctx.getMap();
+        int site = map.getPlacementIndex().firstSite(b.getWidth(), b.getHeight());
+        if (site < 0) return false;
+        Position spot = map.positionAt(site);
 
         if (!ctx.getEconomy().trySpend(enemy, b.getCost())) return false;
 
@@ -125,207 +139,282 @@ public class SimpleAI implements AIController {
     }
 
     private Position findCollectTarget(GameContext ctx, Position from) {
+        GameMap map = ctx.getMap();
         Position best = null;
         int bestScore = Integer.MIN_VALUE;
 
-        for (int y = 0; y < ctx.getMap().getHeight(); y++) {
-            for (int x = 0; x < ctx.getMap().getWidth(); x++) {
-                Position p = new Position(x, y);
-                if (!ctx.canCollectTarget(from, p)) continue;
+        for (Position p : ctx.collectTargets(from)) {
+            TileType tt = map.getType(p.x, p.y);
 
-                TileType tt = ctx.getMap().getTile(x, y).getType();
+            int score = switch (tt) {
+                case MOUNTAIN -> 30;
+                case FOREST -> 20;
+                case WATER -> 10;
+                default -> 0;
+            };
 
-                int score = switch (tt) {
-                    case MOUNTAIN -> 30;
-                    case FOREST -> 20;
-                    case WATER -> 10;
-                    default -> 0;
-                };
+            int d = Math.abs(p.x - from.x) + Math.abs(p.y - from.y);
+            score -= d;
 
-                int d = Math.abs(x - from.x) + Math.abs(y - from.y);
-                score -= d;
-
-                if (score > bestScore) {
-                    bestScore = score;
-                    best = p;
-                }
+            if (score > bestScore) {
+                bestScore = score;
+                best = p;
             }
         }
         return best;
     }
 
     private Position findAttackTarget(GameContext ctx, Player enemy, Position from) {
+        GameMap map = ctx.getMap();
         Position best = null;
         int bestScore = Integer.MIN_VALUE;
 
-        for (int y = 0; y < ctx.getMap().getHeight(); y++) {
-            for (int x = 0; x < ctx.getMap().getWidth(); x++) {
-                Position p = new Position(x, y);
-                if (!ctx.canAttackTarget(enemy, from, p)) continue;
+        for (Position p : ctx.attackTargets(enemy, from)) {
+            Building b = map.getBuilding(p.x, p.y);
+            int score = 0;
 
-                Tile t = ctx.getMap().getTile(x, y);
-                int score = 0;
-
-                if (t.getBuilding() != null) {
-                    score += 1000;
-                    if (t.getBuilding().getType() == BuildingType.CASTLE) score += 10000;
-                } else if (t.getUnit() != null) {
-                    score += 500;
-                }
+            if (b != null) {
+                score += 1000;
+                if (b.getType() == BuildingType.CASTLE) score += 10000;
+            } else if (map.getUnit(p.x, p.y) != null) {
+                score += 500;
+            }
 
-                int d = Math.abs(x - from.x) + Math.abs(y - from.y);
-                score -= d;
+            int d = Math.abs(p.x - from.x) + Math.abs(p.y - from.y);
+            score -= d;
 
-                if (score > bestScore) {
-                    bestScore = score;
-                    best = p;
-                }
+            if (score > bestScore) {
+                bestScore = score;
+                best = p;
             }
         }
         return best;
     }
 
-    private Position nextStepTowardCastleWithBFS(GameContext ctx, Position start, Position castleTopLeft, int maxSteps) {
+    // Picks the move from the unit's cached range that gets it furthest along its way; the way itself comes from the
+    // castle's flow field, a search, or the cluster graph on large maps
+    private Position nextStepTowardCastle(GameContext ctx, Unit u, Position start, Building castle) {
+        MoveRange range = ctx.getMoveRange(u);
+        if (range.isEmpty()) return null;
         GameMap map = ctx.getMap();
-
-        List<Position> goals = Arrays.asList(
-                castleTopLeft,
-                new Position(castleTopLeft.x + 1, castleTopLeft.y),
-                new Position(castleTopLeft.x, castleTopLeft.y + 1),
-                new Position(castleTopLeft.x + 1, castleTopLeft.y + 1)
-        );
-
-        Set<Position> goalAdj = new HashSet<>();
-        for (Position g : goals) {
-            if (map.getTile(g.x, g.y) != null) goalAdj.add(g);
-            addIfInside(map, goalAdj, new Position(g.x + 1, g.y));
-            addIfInside(map, goalAdj, new Position(g.x - 1, g.y));
-            addIfInside(map, goalAdj, new Position(g.x, g.y + 1));
-            addIfInside(map, goalAdj, new Position(g.x, g.y - 1));
-        }
-
-        BFSResult res = bfsToNearestGoal(ctx, start, goalAdj);
-
-        if (res.reached != null) {
-            Position step = firstStepFromStart(res.parent, start, res.reached);
-            if (step == null) return null;
-            if (maxSteps <= 1) return step;
-            Position step2 = secondStepIfPossible(ctx, start, step, goalAdj);
-            return (step2 != null) ? step2 : step;
+        CastleGoal goal = castleGoal;
+        goal.set(map.getWidth(), castle, u.getSize());
+        int startIdx = map.index(start.x, start.y);
+        unitFilter.ctx = ctx;
+        unitFilter.unit = u;
+        boolean woodland = u.getType().isWoodland();
+
+        boolean large = (long) map.getWidth() * map.getHeight() >= HIERARCHICAL_TILES;
+
+        // 1x1 units take the tile in range lowest on the castle's shared flow field; only when nothing in range is
+        // downhill (other units in the way) do they fall back to a search of their own
+        if (u.getSize() == 1 && !large) {
+            FlowField field = ctx.getFlowFields(woodland).toward(castle);
+            int d = field.distance(startIdx);
+            if (d < 0) return greedyToward(ctx, u, startIdx, goal, range);
+            fieldPick.field = field;
+            fieldPick.range = range;
+            fieldPick.best = -1;
+            fieldPick.bestDist = d;
+            range.forEach(fieldPick);
+            if (fieldPick.best >= 0) return map.positionAt(fieldPick.best);
+        } else if (large) {
+            // No component check here: the labels span the whole map, and a failed cluster route falls back alike
+            return hierarchicalStep(ctx, u, startIdx, goal, range);
+        } else if (!canReachCastle(map.getPassability(woodland), map, startIdx, goal)) {
+            return greedyToward(ctx, u, startIdx, goal, range);
         }
+        return searchStep(ctx, startIdx, goal, Integer.MAX_VALUE, range);
+    }
 
-        if (res.bestNode != null && !res.bestNode.equals(start)) {
-            Position step = firstStepFromStart(res.parent, start, res.bestNode);
-            if (step == null) return null;
-            if (maxSteps <= 1) return step;
-            Position step2 = secondStepIfPossible(ctx, start, step, goalAdj);
-            return (step2 != null) ? step2 : step;
+    // Plans the whole way on the cluster graph, then searches tile by tile only as far as the first waypoint that
+    // is at least a move away. The graph assumes 1x1 clearance, so big units take the route as a guide.
+    private Position hierarchicalStep(GameContext ctx, Unit u, int startIdx, CastleGoal goal, MoveRange range) {
+        HierarchicalPathfinder hpa = ctx.getHierarchicalPathfinder(u.getType().isWoodland());
+        int s = u.getSize() - 1;
+        int length = hpa.route(startIdx, goal, goal.x0 - s, goal.y0 - s, goal.x1, goal.y1);
+        if (length < 0) return greedyToward(ctx, u, startIdx, goal, range);
+        int maxSteps = u.getType().getMovePoints();
+
+        Pathfinder.Goal local = goal;
+        int bound = length;
+        for (int k = 0; k < hpa.getWaypointCount(); k++) {
+            if (hpa.getWaypointCost(k) < maxSteps) continue;
+            tileGoal.set(ctx.getMap().getWidth(), hpa.getWaypoint(k), u.getSize());
+            local = tileGoal;
+            bound = hpa.getWaypointCost(k);
+            break;
         }
-
-        return null;
+        // Other units may force a detour, but never one longer than a cluster or two
+        return searchStep(ctx, startIdx, local, bound + 2 * HierarchicalPathfinder.CLUSTER_SIZE, range);
     }
 
-    private Position secondStepIfPossible(GameContext ctx, Position start, Position step1, Set<Position> goals) {
-        BFSResult res2 = bfsToNearestGoal(ctx, step1, goals);
-        if (res2.reached != null) {
-            Position s2 = firstStepFromStart(res2.parent, step1, res2.reached);
-            if (s2 != null && !s2.equals(step1) && !s2.equals(start)) return s2;
-        }
-        if (res2.bestNode != null && !res2.bestNode.equals(step1)) {
-            Position s2 = firstStepFromStart(res2.parent, step1, res2.bestNode);
-            if (s2 != null && !s2.equals(step1) && !s2.equals(start)) return s2;
+    // One search yields the whole path; the move is its furthest tile still in range. Every step costs at least a
+    // point, so only the first few tiles can qualify, and the first always does.
+    private Position searchStep(GameContext ctx, int startIdx, Pathfinder.Goal goal, int maxDist, MoveRange range) {
+        Pathfinder pf = ctx.getPathfinder();
+        int target = pf.search(startIdx, maxDist, unitFilter, goal);
+        if (target < 0) target = pf.getClosest();
+        if (target == startIdx) return null;
+        int maxSteps = range.getUnit().getType().getMovePoints();
+        for (int k = Math.min(maxSteps, pf.distance(target)) - 1; k >= 0; k--) {
+            int step = pf.step(target, k);
+            if (range.contains(step)) return ctx.getMap().positionAt(step);
         }
         return null;
     }
 
-    private void addIfInside(GameMap map, Set<Position> set, Position p) {
-        if (map.getTile(p.x, p.y) != null) set.add(p);
-    }
-
-    private static class BFSResult {
-        Map<Position, Position> parent;
-        Position reached;
-        Position bestNode;
+    // Different components: no search can succeed, so just close the distance greedily
+    private Position greedyToward(GameContext ctx, Unit u, int startIdx, CastleGoal goal, MoveRange range) {
+        GameMap map = ctx.getMap();
+        int step = greedyStep(ctx, u, startIdx, goal);
+        if (step < 0 || !range.contains(step)) return null;
+        int step2 = greedyStep(ctx, u, step, goal);
+        return map.positionAt(step2 >= 0 && step2 != startIdx && range.contains(step2) ? step2 : step);
     }
 
-    private BFSResult bfsToNearestGoal(GameContext ctx, Position start, Set<Position> goals) {
+    private int greedyStep(GameContext ctx, Unit u, int from, CastleGoal goal) {
         GameMap map = ctx.getMap();
+        int w = map.getWidth();
+        int fx = from % w, fy = from / w;
+        int best = -1;
+        int bestDist = goal.estimate(from);
+        for (int dir = 0; dir < 4; dir++) {
+            int nx = fx + DX[dir], ny = fy + DY[dir];
+            if (!ctx.fitsUnit(u, nx, ny)) continue;
+            int nb = map.index(nx, ny);
+            int d = goal.estimate(nb);
+            if (d < bestDist) {
+                bestDist = d;
+                best = nb;
+            }
+        }
+        return best;
+    }
 
-        ArrayDeque<Position> q = new ArrayDeque<>();
-        Map<Position, Position> parent = new HashMap<>();
-        Set<Position> visited = new HashSet<>();
+    // Whether any goal tile shares the start's passability component; the goal's inside is the castle itself
+    private boolean canReachCastle(Passability pass, GameMap map, int start, CastleGoal g) {
+        int c = pass.component(start);
+        if (c == 0) return false;
+        for (int y = Math.max(0, g.y0); y < Math.min(map.getHeight(), g.y1); y++) {
+            for (int x = Math.max(0, g.x0); x < Math.min(map.getWidth(), g.x1); x++) {
+                boolean edgeX = x == g.x0 || x == g.x1 - 1, edgeY = y == g.y0 || y == g.y1 - 1;
+                if ((edgeX || edgeY) && !(edgeX && edgeY) && pass.component(map.index(x, y)) == c) return true;
+            }
+        }
+        return false;
+    }
 
-        q.add(start);
-        visited.add(start);
-        parent.put(start, null);
+    // Lowest flow-field distance among the tiles of a move range, the cheaper move on ties
+    private static final class FieldPick implements IntConsumer {
+        FlowField field;
+        MoveRange range;
+        int best;
+        int bestDist;
+
+        @Override
+        public void accept(int index) {
+            int d = field.distance(index);
+            if (d < 0 || d > bestDist || (d == bestDist && (best < 0 || range.cost(index) >= range.cost(best)))) return;
+            best = index;
+            bestDist = d;
+        }
+    }
 
-        Position foundGoal = null;
+    private static final class UnitFilter implements Pathfinder.TileFilter {
+        GameContext ctx;
+        Unit unit;
 
-        Position bestNode = start;
-        int bestDist = minManhattanToGoals(start, goals);
+        @Override
+        public boolean canEnter(int x, int y) { return ctx.fitsUnit(unit, x, y); }
+    }
 
-        while (!q.isEmpty()) {
-            Position cur = q.removeFirst();
+    // Reached once the unit's footprint covers one tile
+    private static final class TileGoal implements Pathfinder.Goal {
+        int width;
+        int size;
+        int tx, ty;
+
+        void set(int width, int tile, int size) {
+            this.width = width;
+            this.size = size;
+            tx = tile % width;
+            ty = tile / width;
+        }
 
-            int dGoal = minManhattanToGoals(cur, goals);
-            if (dGoal < bestDist) {
-                bestDist = dGoal;
-                bestNode = cur;
-            }
+        @Override
+        public boolean isGoal(int index) { return estimate(index) == 0; }
 
-            if (goals.contains(cur) && !cur.equals(start)) {
-                foundGoal = cur;
-                break;
-            }
+        @Override
+        public int estimate(int index) {
+            int x = index % width, y = index / width;
+            int dx = Math.max(0, Math.max(x - tx, tx - (x + size - 1)));
+            int dy = Math.max(0, Math.max(y - ty, ty - (y + size - 1)));
+            return dx + dy;
+        }
+    }
 
-            for (Position nb : neighbors4(cur)) {
-                if (visited.contains(nb)) continue;
+    // Unexplored tiles; elsewhere the estimate leads to the map corner furthest from where the unit started
+    private static final class Unexplored implements Pathfinder.Goal {
+        GameMap map;
+        FogOfWar fog;
+        Player player;
+        int cx, cy;
+
+        void set(GameMap map, FogOfWar fog, Player player, Position from) {
+            this.map = map;
+            this.fog = fog;
+            this.player = player;
+            cx = from.x < map.getWidth() / 2 ? map.getWidth() - 1 : 0;
+            cy = from.y < map.getHeight() / 2 ? map.getHeight() - 1 : 0;
+        }
 
-                Tile t = map.getTile(nb.x, nb.y);
-                if (t == null) continue;
-                if (!t.getType().isAccessible()) continue;
-                if (t.getBuilding() != null) continue;
-                if (t.getUnit() != null) continue;
+        @Override
+        public boolean isGoal(int index) { return !fog.isExplored(player, map.xOf(index), map.yOf(index)); }
 
-                visited.add(nb);
-                parent.put(nb, cur);
-                q.addLast(nb);
-            }
+        @Override
+        public int estimate(int index) {
+            if (isGoal(index)) return 0;
+            return 1 + Math.abs(map.xOf(index) - cx) + Math.abs(map.yOf(index) - cy);
         }
-
-        BFSResult out = new BFSResult();
-        out.parent = parent;
-        out.reached = foundGoal;
-        out.bestNode = bestNode;
-        return out;
     }
 
-    private int minManhattanToGoals(Position p, Set<Position> goals) {
-        int best = Integer.MAX_VALUE;
-        for (Position g : goals) {
-            int d = Math.abs(p.x - g.x) + Math.abs(p.y - g.y);
-            if (d < best) best = d;
+    // The castle footprint plus its 4-neighbours, i.e. the footprint grown by one tile without the four corners.
+    // A unit has arrived once its own footprint overlaps that shape, so every test is a few comparisons.
+    private static final class CastleGoal implements Pathfinder.Goal {
+        int width;
+        int size;
+        int x0, y0, x1, y1;
+
+        void set(int width, Building castle, int size) {
+            Position p = castle.getPosition();
+            this.width = width;
+            this.size = size;
+            x0 = p.x - 1;
+            y0 = p.y - 1;
+            x1 = p.x + castle.getWidth() + 1;
+            y1 = p.y + castle.getHeight() + 1;
         }
-        return best;
-    }
 
-    private List<Position> neighbors4(Position p) {
-        return Arrays.asList(
-                new Position(p.x + 1, p.y),
-                new Position(p.x - 1, p.y),
-                new Position(p.x, p.y + 1),
-                new Position(p.x, p.y - 1)
-        );
-    }
+        @Override
+        public boolean isGoal(int index) { return estimate(index) == 0; }
+
+        @Override
+        public int estimate(int index) {
+            int x = index % width, y = index / width;
+            int dx = Math.max(0, Math.max(x0 - (x + size - 1), x - (x1 - 1)));
+            int dy = Math.max(0, Math.max(y0 - (y + size - 1), y - (y1 - 1)));
+            // Nearest columns and rows of the grown rectangle; when both narrow down to a corner tile the
+            // closest goal tile is one step further
+            int lx = clamp(x, x0, x1 - 1), hx = clamp(x + size - 1, x0, x1 - 1);
+            int ly = clamp(y, y0, y1 - 1), hy = clamp(y + size - 1, y0, y1 - 1);
+            boolean cornerX = lx == hx && (lx == x0 || lx == x1 - 1);
+            boolean cornerY = ly == hy && (ly == y0 || ly == y1 - 1);
+            return dx + dy + (cornerX && cornerY ? 1 : 0);
+        }
 
-    private Position firstStepFromStart(Map<Position, Position> parent, Position start, Position goal) {
-        Position step = goal;
-        Position prev = parent.get(step);
-        while (prev != null && !prev.equals(start)) {
-            step = prev;
-            prev = parent.get(step);
+        private static int clamp(int v, int lo, int hi) {
+            return Math.max(lo, Math.min(hi, v));
         }
-        if (prev == null) return null;
-        return step;
     }
 }
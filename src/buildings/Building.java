@@ -27,6 +27,10 @@ public abstract class Building {
     public int getBuildTime() { return buildTime; }
     public Player getOwner() { return owner; }
 
+    public int getWidth() { return type.getWidth(); }
+    public int getHeight() { return type.getHeight(); }
+    public int getSight() { return type.getSight(); }
+
     public Position getPosition() { return position; }
     public void setPosition(Position position) { this.position = position; }
 
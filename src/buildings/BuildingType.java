@@ -1,5 +1,32 @@
 package buildings;
 
 public enum BuildingType {
-    CASTLE, BARRACKS, FARM, MINE
+    CASTLE(2, 2, 4, 5), BARRACKS(2, 2, 3, 3), FARM(2, 2, 2, 2), MINE(2, 2, 2, 2);
+
+    private final int width;
+    private final int height;
+    private final int influenceRadius;
+    private final int sight;
+
+    BuildingType(int width, int height, int influenceRadius, int sight) {
+        this.width = width;
+        this.height = height;
+        this.influenceRadius = influenceRadius;
+        this.sight = sight;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    // How far (Manhattan, from the footprint) the building projects territory
+    public int getInfluenceRadius() { return influenceRadius; }
+
+    // Vision radius, measured from the top-left footprint tile
+    public int getSight() { return sight; }
+
+    public static int maxFootprint() {
+        int m = 1;
+        for (BuildingType t : values()) m = Math.max(m, Math.max(t.width, t.height));
+        return m;
+    }
 }
@@ -7,17 +7,23 @@ import units.UnitType;
 
 public class CombatService {
     private final DamageCalculator calc;
+    private LineOfSight lineOfSight;
 
     public CombatService(DamageCalculator calc) {
         this.calc = calc;
     }
 
+    // With line of sight set, ranged attacks also need a clear ray to the target
+    public void setLineOfSight(LineOfSight lineOfSight) { this.lineOfSight = lineOfSight; }
+    public LineOfSight getLineOfSight() { return lineOfSight; }
+
     public boolean inRange(Unit a, Position target) {
         Position p1 = a.getPos();
         if (p1 == null || target == null) return false;
         int dx = Math.abs(p1.x - target.x);
         int dy = Math.abs(p1.y - target.y);
-        return dx + dy <= a.getRange();
+        if (dx + dy > a.getRange()) return false;
+        return lineOfSight == null || lineOfSight.isClear(p1.x, p1.y, target.x, target.y);
     }
 
     public void attack(Unit attacker, Unit defender) {
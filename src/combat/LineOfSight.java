@@ -0,0 +1,88 @@
+package combat;
+
+import map.GameMap;
+import map.TileType;
+
+import java.util.Arrays;
+
+// Mountains and forests block ranged attacks. The tiles a shot passes over come from Bresenham ray tables built
+// once per range, and only those tiles' terrain is read, so a query touches nothing beyond the attacker's range
+// and paged maps stay paged.
+public class LineOfSight {
+    // tables[range][(dy + range) * (2 * range + 1) + (dx + range)] = intermediate cells as packed (dx, dy).
+    // Copied on grow and never changed once published, so reads need no lock.
+    private static volatile int[][][] tables = new int[0][][];
+
+    private final GameMap map;
+
+    public LineOfSight(GameMap map) {
+        this.map = map;
+    }
+
+    public static boolean blocks(TileType t) {
+        return t == TileType.MOUNTAIN || t == TileType.FOREST;
+    }
+
+    // True if no blocker lies strictly between the two tiles along the ray from (x0, y0) to (x1, y1)
+    public boolean isClear(int x0, int y0, int x1, int y1) {
+        if (!map.inBounds(x0, y0) || !map.inBounds(x1, y1)) return false;
+        int dx = x1 - x0, dy = y1 - y0;
+        int range = Math.max(Math.abs(dx), Math.abs(dy));
+        if (range <= 1) return true;
+
+        int[] ray = raysFor(range)[(dy + range) * (2 * range + 1) + (dx + range)];
+        for (int packed : ray) {
+            if (blocks(map.getType(x0 + (short) packed, y0 + (packed >> 16)))) return false;
+        }
+        return true;
+    }
+
+    private static int[][] raysFor(int range) {
+        int[][][] t = tables;
+        if (range < t.length && t[range] != null) return t[range];
+        return build(range);
+    }
+
+    private static synchronized int[][] build(int range) {
+        int[][][] t = tables;
+        if (range < t.length && t[range] != null) return t[range];
+        int side = 2 * range + 1;
+        int[][] rays = new int[side * side][];
+        for (int dy = -range; dy <= range; dy++) {
+            for (int dx = -range; dx <= range; dx++) {
+                rays[(dy + range) * side + (dx + range)] = trace(dx, dy);
+            }
+        }
+        int[][][] grown = Arrays.copyOf(t, Math.max(t.length, range + 1));
+        grown[range] = rays;
+        tables = grown;
+        return rays;
+    }
+
+    // Bresenham from (0, 0) to (dx, dy), endpoints excluded, each cell packed as (dy << 16) | (dx & 0xFFFF)
+    private static int[] trace(int dx, int dy) {
+        int n = Math.max(Math.abs(dx), Math.abs(dy)) - 1;
+        if (n <= 0) return new int[0];
+        int[] out = new int[n];
+        int count = 0;
+
+        int ax = Math.abs(dx), ay = Math.abs(dy);
+        int sx = Integer.signum(dx), sy = Integer.signum(dy);
+        int err = ax - ay;
+        int x = 0, y = 0;
+        while (true) {
+            int e2 = 2 * err;
+            if (e2 > -ay) {
+                err -= ay;
+                x += sx;
+            }
+            if (e2 < ax) {
+                err += ax;
+                y += sy;
+            }
+            if (x == dx && y == dy) break;
+            out[count++] = (y << 16) | (x & 0xFFFF);
+        }
+        return count == n ? out : Arrays.copyOf(out, count);
+    }
+}
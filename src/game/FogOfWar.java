@@ -0,0 +1,233 @@
+package game;
+
+import buildings.Building;
+import map.GameMap;
+import map.MapListener;
+import map.Position;
+import map.TileType;
+import player.Player;
+import units.Unit;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+// Per-player visibility. Every unit and building is a sight source whose lit tiles come from recursive
+// shadowcasting (MOUNTAIN and FOREST block sight). Each player keeps a per-tile count of sources seeing it,
+// so a source can be withdrawn without touching the others. Sources are only recast when they appear, move,
+// die, or when terrain changes within their radius.
+public class FogOfWar implements MapListener {
+    // Octant transforms (xx, xy, yx, yy)
+    private static final int[][] OCTANTS = {
+            {1, 0, 0, 1}, {0, 1, 1, 0}, {0, -1, 1, 0}, {-1, 0, 0, 1},
+            {-1, 0, 0, -1}, {0, -1, -1, 0}, {0, 1, -1, 0}, {1, 0, 0, -1}
+    };
+
+    private static final class Layer {
+        final short[] seenBy;
+        final BitSet visible = new BitSet();
+        final BitSet explored = new BitSet();
+        int version;
+
+        Layer(int size) {
+            seenBy = new short[size];
+        }
+    }
+
+    private static final class Source {
+        final Player owner;
+        final int x;
+        final int y;
+        final int radius;
+        int[] lit;
+
+        Source(Player owner, int x, int y, int radius) {
+            this.owner = owner;
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+        }
+    }
+
+    private final GameMap map;
+    private final int width;
+    private final IdentityHashMap<Player, Layer> layers = new IdentityHashMap<>();
+    private final IdentityHashMap<Object, Source> sources = new IdentityHashMap<>();
+    private int maxRadius = 1;
+
+    private int[] scratch = new int[64];
+    private int scratchCount;
+
+    public FogOfWar(GameMap map, Player... players) {
+        this.map = map;
+        this.width = map.getWidth();
+        for (Player p : players) layers.put(p, new Layer(width * map.getHeight()));
+        for (Player p : players) {
+            for (Unit u : p.getUnits()) if (u.getPos() != null) addSource(u, p, u.getPos().x, u.getPos().y, u.getSight());
+            for (Building b : p.getBuildings()) if (b.getPosition() != null) addSource(b, p, b.getPosition().x, b.getPosition().y, b.getSight());
+        }
+    }
+
+    // Heap one player's layer takes on a width x height map, for budgeting before the fog exists
+    public static long estimateBytes(int width, int height) {
+        long n = (long) width * height;
+        return n * 2 + n / 4;
+    }
+
+    public boolean isVisible(Player p, int x, int y) {
+        Layer l = layers.get(p);
+        return l != null && map.inBounds(x, y) && l.visible.get(y * width + x);
+    }
+
+    public boolean isExplored(Player p, int x, int y) {
+        Layer l = layers.get(p);
+        return l != null && map.inBounds(x, y) && l.explored.get(y * width + x);
+    }
+
+    // Changes whenever the player's visible set changes; lets renderers know when to redraw everything
+    public int getVersion(Player p) {
+        Layer l = layers.get(p);
+        return l == null ? 0 : l.version;
+    }
+
+    @Override
+    public void unitChanged(int x, int y, Unit before, Unit after) {
+        if (before != null) removeSource(before);
+        // A big unit is one source, anchored at its top-left tile
+        if (after != null && (!after.isBig() || isAnchor(after.getPos(), x, y))) {
+            removeSource(after);
+            addSource(after, after.getOwner(), x, y, after.getSight());
+        }
+    }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) {
+        if (before != null && isAnchor(before.getPosition(), x, y)) removeSource(before);
+        if (after != null && isAnchor(after.getPosition(), x, y)) addSource(after, after.getOwner(), x, y, after.getSight());
+    }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) {
+        if (opaque(before) == opaque(after)) return;
+        // Any source that could see this tile has to be recast
+        map.getSpatialIndex().forEachOccupiedWithin(x, y, 2 * maxRadius, idx -> {
+            int sx = map.xOf(idx), sy = map.yOf(idx);
+            Unit u = map.getUnit(sx, sy);
+            if (u != null && (!u.isBig() || isAnchor(u.getPos(), sx, sy))) recast(sources.get(u), x, y);
+            Building b = map.getBuilding(sx, sy);
+            if (b != null && isAnchor(b.getPosition(), sx, sy)) recast(sources.get(b), x, y);
+        });
+    }
+
+    private boolean isAnchor(Position p, int x, int y) {
+        return p != null && p.x == x && p.y == y;
+    }
+
+    private void recast(Source s, int x, int y) {
+        if (s == null) return;
+        int dx = s.x - x, dy = s.y - y;
+        if (dx * dx + dy * dy > s.radius * s.radius) return;
+        Layer l = layers.get(s.owner);
+        if (l == null) return;
+        apply(l, s.lit, -1);
+        s.lit = cast(s.x, s.y, s.radius);
+        apply(l, s.lit, 1);
+    }
+
+    private void addSource(Object key, Player owner, int x, int y, int radius) {
+        Layer l = layers.get(owner);
+        if (l == null) return;
+        Source s = new Source(owner, x, y, radius);
+        s.lit = cast(x, y, radius);
+        sources.put(key, s);
+        maxRadius = Math.max(maxRadius, radius);
+        apply(l, s.lit, 1);
+    }
+
+    private void removeSource(Object key) {
+        Source s = sources.remove(key);
+        if (s == null) return;
+        apply(layers.get(s.owner), s.lit, -1);
+    }
+
+    private void apply(Layer l, int[] lit, int delta) {
+        for (int idx : lit) {
+            int before = l.seenBy[idx];
+            int after = before + delta;
+            l.seenBy[idx] = (short) after;
+            if (before == 0 && after > 0) {
+                l.visible.set(idx);
+                l.explored.set(idx);
+                l.version++;
+            } else if (before > 0 && after == 0) {
+                l.visible.clear(idx);
+                l.version++;
+            }
+        }
+    }
+
+    private static boolean opaque(TileType t) {
+        return t == TileType.MOUNTAIN || t == TileType.FOREST;
+    }
+
+    private boolean opaqueAt(int x, int y) {
+        return !map.inBounds(x, y) || opaque(map.getType(x, y));
+    }
+
+    // Lit tiles of a source as sorted, de-duplicated flat indices (octant edges are visited twice)
+    private int[] cast(int ox, int oy, int radius) {
+        scratchCount = 0;
+        if (!map.inBounds(ox, oy)) return new int[0];
+        light(ox, oy);
+        for (int[] o : OCTANTS) castLight(ox, oy, 1, 1.0, 0.0, radius, o[0], o[1], o[2], o[3]);
+
+        int[] out = Arrays.copyOf(scratch, scratchCount);
+        Arrays.sort(out);
+        int n = 0;
+        for (int i = 0; i < out.length; i++) {
+            if (i == 0 || out[i] != out[i - 1]) out[n++] = out[i];
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private void castLight(int ox, int oy, int row, double start, double end, int radius, int xx, int xy, int yx, int yy) {
+        if (start < end) return;
+        int r2 = radius * radius;
+        double newStart = 0;
+        for (int j = row; j <= radius; j++) {
+            int dx = -j - 1;
+            int dy = -j;
+            boolean blocked = false;
+            while (dx <= 0) {
+                dx++;
+                int mx = ox + dx * xx + dy * xy;
+                int my = oy + dx * yx + dy * yy;
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if (start < rightSlope) continue;
+                if (end > leftSlope) break;
+
+                if (dx * dx + dy * dy <= r2 && map.inBounds(mx, my)) light(mx, my);
+
+                if (blocked) {
+                    if (opaqueAt(mx, my)) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (opaqueAt(mx, my) && j < radius) {
+                    blocked = true;
+                    castLight(ox, oy, j + 1, start, leftSlope, radius, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) break;
+        }
+    }
+
+    private void light(int x, int y) {
+        if (scratchCount == scratch.length) scratch = Arrays.copyOf(scratch, scratchCount * 2);
+        scratch[scratchCount++] = y * width + x;
+    }
+}
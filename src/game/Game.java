@@ -4,13 +4,29 @@ import ai.SimpleAI;
 import buildings.*;
 import combat.CombatService;
 import combat.DamageCalculator;
+import combat.LineOfSight;
+import map.DirtyTracker;
 import map.GameMap;
 import map.Position;
-import map.Tile;
+import map.StartLayout;
 import map.TileType;
+import map.generator.ImageMapImporter;
+import map.generator.LakeCleanupPass;
+import map.generator.MapGenerator;
+import map.generator.MapImporter;
+import map.generator.MapPipeline;
+import map.generator.NoiseMapGenerator;
+import map.generator.PooledMapGenerator;
 import map.generator.ProceduralMapGenerator;
+import map.generator.RawMapImporter;
+import map.generator.RiverPass;
+import map.generator.RoadPass;
+import map.generator.SmoothingPass;
+import map.generator.StartAreaPass;
+import map.generator.StartPlanner;
 import player.Faction;
 import player.Player;
+import player.TerritoryManager;
 import resources.EconomyService;
 import resources.ResourceStock;
 import save.SaveData;
@@ -19,7 +35,37 @@ import ui.GameUI;
 import units.Unit;
 import units.UnitType;
 
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
 public class Game {
+    private static final int MAP_WIDTH = Integer.getInteger("goldencastle.mapWidth", 16);
+    private static final int MAP_HEIGHT = Integer.getInteger("goldencastle.mapHeight", 8);
+    // Fixed terrain seed to reproduce a map; a fresh one is drawn when unset
+    private static final Long MAP_SEED = Long.getLong("goldencastle.seed");
+    // "noise" for coherent terrain, anything else for the classic white-noise roll
+    private static final String MAP_GENERATOR = System.getProperty("goldencastle.generator", "procedural");
+    // Terrain imported from an image, or from a raw file sized by mapWidth / mapHeight, instead of generated
+    private static final String MAP_FILE = System.getProperty("goldencastle.mapFile");
+    private static final boolean LINE_OF_SIGHT = Boolean.parseBoolean(System.getProperty("goldencastle.lineOfSight", "true"));
+    // Maps bigger than this are generated lazily into a paged, memory-mapped terrain store
+    private static final long PAGED_MAP_TILES = 4096L * 4096L;
+    private static final int START_AREA = 4;
+    private static final int MIN_LAKE = 4;
+    private static final int TILES_PER_RIVER = 250_000;
+    // Unfair maps are regenerated with the next seed; past these limits the corner layout is repaired instead
+    private static final int MAX_MAP_ATTEMPTS = 8;
+    private static final long REGENERATE_TILES = 1024L * 1024L;
+    private static final int START_RADIUS = 10;
+    private static final int START_ENOUGH = 8;
+    private static final double START_IMBALANCE = 0.25;
+    private static final int START_MIN_RESOURCES = 4;
+    // Finished maps kept ready on a background thread, bounded by count and by estimated heap use
+    private static final int MAP_POOL_SIZE = Integer.getInteger("goldencastle.mapPool", 1);
+    private static final long MAP_POOL_BYTES = Long.getLong("goldencastle.mapPoolMB", Runtime.getRuntime().maxMemory() / 4 >> 20) << 20;
+
     private final GameUI ui;
 
     private GameState state = GameState.MENU;
@@ -28,26 +74,59 @@ public class Game {
 
     private Building pendingBuild;
 
+    // Terrain as of the last save, patched from the dirty tracker instead of re-walking the map
+    private TileType[] savedTiles;
+    private DirtyTracker saveTracker;
+
     private final SaveManager saveManager = new SaveManager();
+    private final MapImporter importer;
+    private final MapGenerator maps;
 
     public Game(GameUI ui) {
         this.ui = ui;
+        MapImporter imp = MAP_FILE == null ? null : newImporter(Path.of(MAP_FILE));
+        MapGenerator source = imp != null ? () -> importStartMap(imp) : Game::generateStartMap;
+        this.importer = imp;
+        // Generation starts while the menu is up, so NEW GAME normally finds a map waiting
+        this.maps = MAP_POOL_SIZE > 0 ? new PooledMapGenerator(source, MAP_POOL_SIZE, MAP_POOL_BYTES, Game::estimateGameBytes) : source;
+    }
+
+    // A pooled map turns into a game, so the pool budgets it with the fog and territory layers both players add
+    private static long estimateGameBytes(GameMap map) {
+        int w = map.getWidth(), h = map.getHeight();
+        return map.estimateBytes() + 2 * (FogOfWar.estimateBytes(w, h) + TerritoryManager.estimateBytes(w, h));
     }
 
+    // The map comes from the pool or is generated off the UI thread; the game starts once it is there, unless the
+    // player has gone back to the menu in the meantime
     public void startNewGame() {
-        tm = new TurnManager();
+        if (state == GameState.LOADING) return;
+        state = GameState.LOADING;
+        ui.showLoading();
+        ui.notifyEvent("Generating map...");
+        maps.generateAsync().whenComplete((map, error) -> ui.runLater(() -> {
+            if (state != GameState.LOADING) return;
+            if (error != null) {
+                goToMainMenu();
+                ui.notifyEvent("Map generation failed: " + error.getMessage());
+                return;
+            }
+            startNewGame(map);
+        }));
+    }
 
-        // 16x8 map
-        GameMap map = new ProceduralMapGenerator(16, 8).generate();
-        forceCornersGrass(map);
+    private void startNewGame(GameMap map) {
+        tm = new TurnManager();
 
         Player human = new Player("You", Faction.HUMAN, new ResourceStock(GameContext.initialResources()));
         Player enemy = new Player("Enemy", Faction.ENEMY, new ResourceStock(GameContext.initialResources()));
 
         EconomyService economy = new EconomyService();
-        CombatService combat = new CombatService(new DamageCalculator());
+        CombatService combat = newCombat(map);
 
-        ctx = new GameContext(map, human, enemy, economy, combat, new SimpleAI());
+        ctx = new GameContext(map, human, enemy, economy, combat, new SimpleAI(), tm.getTurn());
+        ctx.bindTurns(tm);
+        trackForSave(map);
         placeStartingBuildings();
 
         ui.bindTurnManager(tm);
@@ -57,16 +136,82 @@ public class Game {
 
         state = GameState.RUNNING;
         ui.showGame();
-        ui.notifyEvent("New game started");
+        ui.notifyEvent(map.getImportReport() != null
+                ? "New game started (imported " + map.getImportReport() + ")"
+                : "New game started (seed " + map.getSeed() + ")");
         ui.render();
     }
 
+    // Runs on the map pool's thread as well as the EDT, so it only touches configuration and fresh objects
+    private static GameMap generateStartMap() {
+        // 16x8 map unless overridden with -Dgoldencastle.mapWidth / -Dgoldencastle.mapHeight
+        boolean paged = (long) MAP_WIDTH * MAP_HEIGHT > PAGED_MAP_TILES;
+        long seed = MAP_SEED != null ? MAP_SEED : new SplittableRandom().nextLong();
+        StartPlanner planner = newPlanner();
+        int attempts = (long) MAP_WIDTH * MAP_HEIGHT <= REGENERATE_TILES ? MAX_MAP_ATTEMPTS : 1;
+        GameMap map = null;
+        StartLayout layout = null;
+        for (int attempt = 0; attempt < attempts && layout == null; attempt++) {
+            if (attempt > 0) seed++;
+            map = generateMap(seed, paged);
+            if (!paged) layout = planner.plan(map);
+        }
+        if (layout == null) layout = planner.repair(map, !paged);
+        map.setStartLayout(layout);
+        if (!paged) new RoadPass().apply(map);
+        map.setSeed(seed);
+        return map;
+    }
+
+    private static StartPlanner newPlanner() {
+        return new StartPlanner(START_RADIUS, START_ENOUGH, START_IMBALANCE, START_MIN_RESOURCES);
+    }
+
+    private static MapImporter newImporter(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".raw") || name.endsWith(".bin")) return new RawMapImporter(file, MAP_WIDTH, MAP_HEIGHT, PAGED_MAP_TILES);
+        return new ImageMapImporter(file, PAGED_MAP_TILES);
+    }
+
+    // Imported maps are used as drawn: no regeneration, the start layout is only repaired if none fits
+    private static GameMap importStartMap(MapImporter importer) {
+        GameMap map = importer.generate();
+        boolean paged = (long) map.getWidth() * map.getHeight() > PAGED_MAP_TILES;
+        StartPlanner planner = newPlanner();
+        StartLayout layout = paged ? null : planner.plan(map);
+        map.setStartLayout(layout != null ? layout : planner.repair(map, !paged));
+        return map;
+    }
+
+    private static GameMap generateMap(long seed, boolean paged) {
+        MapGenerator generator = MAP_GENERATOR.equals("noise")
+                ? new NoiseMapGenerator(MAP_WIDTH, MAP_HEIGHT, paged, seed)
+                : new ProceduralMapGenerator(MAP_WIDTH, MAP_HEIGHT, paged, seed);
+        // Paged maps are too large to post-process as a whole; they only get their start corners cleared
+        if (paged) {
+            GameMap map = generator.generate();
+            new StartAreaPass(START_AREA).apply(map);
+            return map;
+        }
+        int rivers = (int) ((long) MAP_WIDTH * MAP_HEIGHT / TILES_PER_RIVER);
+        return new MapPipeline(generator, new SmoothingPass(), new LakeCleanupPass(MIN_LAKE),
+                new RiverPass(rivers, seed), new StartAreaPass(START_AREA)).generate();
+    }
+
+    private CombatService newCombat(GameMap map) {
+        CombatService combat = new CombatService(new DamageCalculator());
+        if (LINE_OF_SIGHT) {
+            combat.setLineOfSight(new LineOfSight(map));
+        }
+        return combat;
+    }
+
     public void loadLastSave() {
+        if (state == GameState.LOADING) return;
         SaveData d = saveManager.loadFromDisk();
         if (d == null) {
             startNewGame();
-            ui.notifyEvent("No save found. Started new game.");
-            ui.render();
+            ui.notifyEvent("No save found. Generating a new map...");
             return;
         }
 
@@ -75,20 +220,17 @@ public class Game {
         if (tm.isHumanTurn() != d.humanTurn) tm.next();
 
         GameMap map = new GameMap(d.width, d.height);
-        int k = 0;
-        for (int y = 0; y < d.height; y++) {
-            for (int x = 0; x < d.width; x++) {
-                map.setTile(x, y, new Tile(new Position(x, y), d.tiles[k++]));
-            }
-        }
+        map.parallelMapTerrain((x, y, current) -> d.tiles[y * d.width + x]);
 
         Player human = new Player("You", Faction.HUMAN, new ResourceStock(d.humanRes));
         Player enemy = new Player("Enemy", Faction.ENEMY, new ResourceStock(d.enemyRes));
 
         EconomyService economy = new EconomyService();
-        CombatService combat = new CombatService(new DamageCalculator());
+        CombatService combat = newCombat(map);
 
-        ctx = new GameContext(map, human, enemy, economy, combat, new SimpleAI());
+        ctx = new GameContext(map, human, enemy, economy, combat, new SimpleAI(), tm.getTurn());
+        ctx.bindTurns(tm);
+        trackForSave(map);
 
         for (var br : d.buildings) {
             Player owner = br.human ? human : enemy;
@@ -99,7 +241,7 @@ public class Game {
                 case MINE -> new Mine(owner);
             };
             b.setHitsRemaining(br.hits);
-            ctx.placeBuilding(b, new Position(br.x, br.y), owner);
+            ctx.placeBuilding(b, map.pos(br.x, br.y), owner);
         }
 
         for (var ur : d.units) {
@@ -107,12 +249,14 @@ public class Game {
             Unit u = ctx.createUnit(ur.type, owner);
             u.setHitsRemaining(ur.hits);
 
-            Tile t = map.getTile(ur.x, ur.y);
-            if (t != null && t.getUnit() == null && t.getBuilding() == null && t.getType().isAccessible()) {
-                t.setUnit(u);
-                u.setPos(new Position(ur.x, ur.y));
-                owner.addUnit(u);
-            }
+            ctx.spawnUnit(u, map.pos(ur.x, ur.y));
+        }
+
+        for (var r : d.deposits) {
+            if (map.inBounds(r.x, r.y)) map.getResourceDeposits().setRemaining(r.x, r.y, r.remaining);
+        }
+        for (var r : d.regrowth) {
+            if (map.inBounds(r.x, r.y)) ctx.getRegrowth().schedule(r.x, r.y, r.type, r.due);
         }
 
         pendingBuild = null;
@@ -139,13 +283,21 @@ public class Game {
         d.humanRes.putAll(ctx.getHuman().getResources().snapshot());
         d.enemyRes.putAll(ctx.getEnemy().getResources().snapshot());
 
-        d.tiles = new TileType[d.width * d.height];
-        int k = 0;
-        for (int y = 0; y < d.height; y++) {
-            for (int x = 0; x < d.width; x++) {
-                d.tiles[k++] = ctx.getMap().getTile(x, y).getType();
+        GameMap map = ctx.getMap();
+        if (savedTiles == null) {
+            TileType[] snapshot = new TileType[d.width * d.height];
+            map.parallelForEachRow(y -> {
+                for (int x = 0; x < d.width; x++) snapshot[y * d.width + x] = map.getType(x, y);
+            });
+            savedTiles = snapshot;
+            saveTracker.drainTiles();
+        } else {
+            BitSet changed = saveTracker.drainTiles();
+            for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+                savedTiles[i] = map.getType(map.xOf(i), map.yOf(i));
             }
         }
+        d.tiles = savedTiles;
 
         for (var b : ctx.getHuman().getBuildings()) {
             if (b.getPosition() == null) continue;
@@ -191,11 +343,33 @@ public class Game {
             d.units.add(ur);
         }
 
+        map.getResourceDeposits().forEachPartial((x, y, remaining) -> {
+            SaveData.DepositRec r = new SaveData.DepositRec();
+            r.x = x;
+            r.y = y;
+            r.remaining = remaining;
+            d.deposits.add(r);
+        });
+
+        ctx.getRegrowth().forEachPending((x, y, type, due) -> {
+            SaveData.RegrowthRec r = new SaveData.RegrowthRec();
+            r.x = x;
+            r.y = y;
+            r.type = type;
+            r.due = due;
+            d.regrowth.add(r);
+        });
+
         saveManager.saveToDisk(d);
         ui.notifyEvent("Saved");
         ui.render();
     }
 
+    private void trackForSave(GameMap map) {
+        savedTiles = null;
+        saveTracker = map.newDirtyTracker();
+    }
+
     public void goToMainMenu() {
         state = GameState.MENU;
         pendingBuild = null;
@@ -207,27 +381,15 @@ public class Game {
         return state == GameState.RUNNING && tm != null && tm.isHumanTurn() && ctx != null;
     }
 
-    private void forceCornersGrass(GameMap map) {
-        int w = map.getWidth(), h = map.getHeight();
-        for (int y = 0; y < 4; y++) for (int x = 0; x < 4; x++) map.getTile(x, y).setType(TileType.GRASS);
-        for (int y = h - 4; y < h; y++) for (int x = w - 4; x < w; x++) map.getTile(x, y).setType(TileType.GRASS);
-    }
-
     private void placeStartingBuildings() {
-        int w = ctx.getMap().getWidth();
-        int h = ctx.getMap().getHeight();
-
-        Position humanCastle = new Position(w - 2, h - 2);
-        Position humanBarr = new Position(w - 4, h - 2);
+        GameMap map = ctx.getMap();
+        StartLayout layout = map.getStartLayout() != null ? map.getStartLayout() : StartLayout.corners(map);
 
-        Position enemyCastle = new Position(0, 0);
-        Position enemyBarr = new Position(2, 0);
+        ctx.placeBuilding(new Castle(ctx.getHuman()), layout.humanCastle, ctx.getHuman());
+        ctx.placeBuilding(new Barracks(ctx.getHuman()), layout.humanBarracks, ctx.getHuman());
 
-        ctx.placeBuilding(new Castle(ctx.getHuman()), humanCastle, ctx.getHuman());
-        ctx.placeBuilding(new Barracks(ctx.getHuman()), humanBarr, ctx.getHuman());
-
-        ctx.placeBuilding(new Castle(ctx.getEnemy()), enemyCastle, ctx.getEnemy());
-        ctx.placeBuilding(new Barracks(ctx.getEnemy()), enemyBarr, ctx.getEnemy());
+        ctx.placeBuilding(new Castle(ctx.getEnemy()), layout.enemyCastle, ctx.getEnemy());
+        ctx.placeBuilding(new Barracks(ctx.getEnemy()), layout.enemyBarracks, ctx.getEnemy());
     }
 
     public Building getPendingBuild() { return pendingBuild; }
@@ -238,9 +400,7 @@ public class Game {
         Unit u = ctx.unitAt(from);
         if (u == null || u.getOwner() != ctx.getHuman()) return false;
 
-        int dist = Math.abs(to.x - from.x) + Math.abs(to.y - from.y);
-        int max = (u.getType() == UnitType.CAVALRY) ? 2 : 1;
-        if (dist < 1 || dist > max) return false;
+        if (!ctx.inMoveRange(u, to)) return false;
 
         boolean ok = ctx.moveUnit(ctx.getHuman(), from, to);
         if (ok) endHumanTurn();
@@ -253,6 +413,11 @@ public class Game {
         return ctx.canAttackTarget(ctx.getHuman(), from, target);
     }
 
+    public List<Position> attackTargets(Position from) {
+        if (!isHumanTurnRunning()) return List.of();
+        return ctx.attackTargets(ctx.getHuman(), from);
+    }
+
     public void attackTarget(Position from, Position target) {
         if (!canAttackTarget(from, target)) return;
         ctx.attackTargetAndMoveIfKilled(ctx.getHuman(), from, target);
@@ -266,6 +431,11 @@ public class Game {
         return ctx.canCollectTarget(from, target);
     }
 
+    public List<Position> collectTargets(Position from) {
+        if (!isHumanTurnRunning()) return List.of();
+        return ctx.collectTargets(from);
+    }
+
     public void collectTarget(Position from, Position target) {
         if (!canCollectTarget(from, target)) return;
         ctx.collectTargetAndMove(from, target);
@@ -276,11 +446,12 @@ public class Game {
     public void trainSoldier() { train(UnitType.SOLDIER); }
     public void trainArcher() { train(UnitType.ARCHER); }
     public void trainCavalry() { train(UnitType.CAVALRY); }
+    public void trainSiege() { train(UnitType.SIEGE); }
 
     private void train(UnitType type) {
         if (!isHumanTurnRunning()) return;
 
-        Position spawn = ctx.findBarracksSpawn(ctx.getHuman(), true);
+        Position spawn = ctx.findBarracksSpawn(ctx.getHuman(), true, type.getSize());
         if (spawn == null) {
             ui.notifyEvent("No spawn space near Barracks");
             ui.render();
@@ -294,17 +465,12 @@ public class Game {
             return; // no end turn
         }
 
-        Tile t = ctx.getMap().getTile(spawn.x, spawn.y);
-        if (t == null || t.getUnit() != null || t.getBuilding() != null || !t.getType().isAccessible()) {
+        if (!ctx.spawnUnit(u, spawn)) {
             ui.notifyEvent("Invalid spawn tile");
             ui.render();
             return; // no end turn
         }
 
-        t.setUnit(u);
-        u.setPos(spawn);
-        ctx.getHuman().addUnit(u);
-
         ui.notifyEvent("Trained " + type);
         endHumanTurn();
         ui.render();
@@ -347,7 +513,7 @@ public class Game {
         if (pendingBuild == null) return;
 
         ui.requestBuildPlacement(pendingBuild);
-        ui.notifyEvent("Click a 2x2 empty GRASS area");
+        ui.notifyEvent("Click a " + pendingBuild.getWidth() + "x" + pendingBuild.getHeight() + " empty GRASS area");
         ui.render();
     }
 
@@ -356,7 +522,7 @@ public class Game {
         if (pendingBuild == null) return;
 
         if (!ctx.canPlaceBuilding(pendingBuild, topLeft, ctx.getHuman())) {
-            ui.notifyEvent("Invalid place (need 2x2 GRASS empty)");
+            ui.notifyEvent("Invalid place (need " + pendingBuild.getWidth() + "x" + pendingBuild.getHeight() + " GRASS empty)");
             ui.render();
             pendingBuild = null; // cancel build so player can do other actions
             return;
@@ -7,6 +7,10 @@ import map.GameMap;
 import map.Position;
 import map.Tile;
 import map.TileType;
+import map.path.FlowFields;
+import map.path.HierarchicalPathfinder;
+import map.path.Pathfinder;
+import map.path.WeightedPathfinder;
 import player.Player;
 import resources.EconomyService;
 import resources.ResourceType;
@@ -14,7 +18,12 @@ import units.Unit;
 import units.UnitFactory;
 import units.UnitType;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GameContext {
     private final GameMap map;
@@ -23,14 +32,54 @@ public class GameContext {
     private final EconomyService economy;
     private final CombatService combat;
     private final AIController ai;
+    private final FogOfWar fog;
+    private final RegrowthWheel regrowth;
+    private Pathfinder pathfinder;
+    // On foot, then woodland
+    private final FlowFields[] flowFields = new FlowFields[2];
+    private final HierarchicalPathfinder[] hierarchical = new HierarchicalPathfinder[2];
+    private WeightedPathfinder weighted;
+    private final Map<Unit, MoveRange> moveRanges = new IdentityHashMap<>();
+    private int moveRangeMods = -1;
+    private int moveRangeEpoch;
+    // Bumped by the turn manager every round; contexts without one never change turn
+    private int turnEpoch;
+    private int[] rangeTiles = new int[32];
+    private int rangeCount;
+
+    private static final int HARVEST_AMOUNT = 30;
 
     public GameContext(GameMap map, Player human, Player enemy, EconomyService economy, CombatService combat, AIController ai) {
+        this(map, human, enemy, economy, combat, ai, 1);
+    }
+
+    // startTurn is the turn the game is on right now; depleted tiles regrow counted from it
+    public GameContext(GameMap map, Player human, Player enemy, EconomyService economy, CombatService combat, AIController ai,
+                       int startTurn) {
         this.map = map;
         this.human = human;
         this.enemy = enemy;
         this.economy = economy;
         this.combat = combat;
         this.ai = ai;
+
+        human.getTerritory().attach(map.getWidth(), map.getHeight());
+        enemy.getTerritory().attach(map.getWidth(), map.getHeight());
+
+        this.fog = new FogOfWar(map, human, enemy);
+        map.addListener(fog);
+        this.regrowth = new RegrowthWheel(map, startTurn);
+        map.addListener(regrowth);
+    }
+
+    // Depleted tiles regrow against this turn counter from now on; it must be on the turn the context started at
+    public void bindTurns(TurnManager tm) {
+        if (tm.getTurn() != regrowth.getTurn()) {
+            throw new IllegalStateException("Turn manager is on turn " + tm.getTurn()
+                    + ", context started at " + regrowth.getTurn());
+        }
+        tm.addTurnListener(regrowth::advance);
+        tm.addTurnListener(turn -> turnEpoch++);
     }
 
     public GameMap getMap() { return map; }
@@ -39,6 +88,45 @@ public class GameContext {
     public EconomyService getEconomy() { return economy; }
     public CombatService getCombat() { return combat; }
     public AIController getAI() { return ai; }
+    public FogOfWar getFog() { return fog; }
+    public RegrowthWheel getRegrowth() { return regrowth; }
+
+    // Shared by the AI and the UI; its arrays cost 12 bytes a tile, so it is only built once someone searches
+    public Pathfinder getPathfinder() {
+        if (pathfinder == null) pathfinder = new Pathfinder(map);
+        return pathfinder;
+    }
+
+    public FlowFields getFlowFields() {
+        return getFlowFields(false);
+    }
+
+    public FlowFields getFlowFields(boolean woodland) {
+        int k = woodland ? 1 : 0;
+        if (flowFields[k] == null) {
+            flowFields[k] = new FlowFields(map, woodland);
+            map.addListener(flowFields[k]);
+        }
+        return flowFields[k];
+    }
+
+    public WeightedPathfinder getWeightedPathfinder() {
+        if (weighted == null) weighted = new WeightedPathfinder(map);
+        return weighted;
+    }
+
+    public HierarchicalPathfinder getHierarchicalPathfinder() {
+        return getHierarchicalPathfinder(false);
+    }
+
+    public HierarchicalPathfinder getHierarchicalPathfinder(boolean woodland) {
+        int k = woodland ? 1 : 0;
+        if (hierarchical[k] == null) {
+            hierarchical[k] = new HierarchicalPathfinder(map, woodland);
+            map.addListener(hierarchical[k]);
+        }
+        return hierarchical[k];
+    }
 
     public static EnumMap<ResourceType, Integer> initialResources() {
         EnumMap<ResourceType, Integer> m = new EnumMap<>(ResourceType.class);
@@ -59,6 +147,7 @@ public class GameContext {
     }
 
     public boolean isFreeForUnit(Position p, boolean big) {
+        if (big) return map.getClearance().fits(p.x, p.y, 2);
         Tile t = map.getTile(p.x, p.y);
         if (t == null) return false;
         if (!t.getType().isAccessible()) return false;
@@ -67,19 +156,114 @@ public class GameContext {
         return true;
     }
 
+    // Whether u could stand with its top-left corner at (x, y); tiles u already covers count as free
+    public boolean fitsUnit(Unit u, int x, int y) {
+        int size = u.getSize();
+        if (size == 1) {
+            return map.inBounds(x, y) && u.getType().canEnter(map.getType(x, y))
+                    && map.getBuilding(x, y) == null && map.getUnit(x, y) == null;
+        }
+        if (map.getClearance().fits(x, y, size)) return true;
+
+        // Only a footprint overlapping the unit's current one can still fit
+        Position at = u.getPos();
+        if (at == null || Math.abs(at.x - x) >= size || Math.abs(at.y - y) >= size) return false;
+        for (int yy = y; yy < y + size; yy++) {
+            for (int xx = x; xx < x + size; xx++) {
+                if (!map.inBounds(xx, yy) || !u.getType().canEnter(map.getType(xx, yy)) || map.getBuilding(xx, yy) != null) {
+                    return false;
+                }
+                Unit other = map.getUnit(xx, yy);
+                if (other != null && other != u) return false;
+            }
+        }
+        return true;
+    }
+
+    // Movement points for u to step its top-left corner onto (x, y), or -1 if it doesn't fit there; a big unit pays
+    // for the roughest tile under its footprint
+    public int moveCost(Unit u, int x, int y) {
+        if (!fitsUnit(u, x, y)) return -1;
+        int size = u.getSize(), cost = 0;
+        for (int yy = y; yy < y + size; yy++) {
+            for (int xx = x; xx < x + size; xx++) cost = Math.max(cost, map.getType(xx, yy).getMoveCost());
+        }
+        return cost;
+    }
+
+    // Every top-left corner u can reach this turn with its movement points, walking around whatever is in the way.
+    // Ranges are kept per unit until the map changes or a turn passes, so the move rule, the AI and the highlight
+    // all read the same search.
+    public MoveRange getMoveRange(Unit u) {
+        if (moveRangeMods != map.getModCount() || moveRangeEpoch != turnEpoch) {
+            moveRanges.clear();
+            moveRangeMods = map.getModCount();
+            moveRangeEpoch = turnEpoch;
+        }
+        MoveRange r = moveRanges.get(u);
+        if (r == null) {
+            r = computeMoveRange(u);
+            moveRanges.put(u, r);
+        }
+        return r;
+    }
+
+    public boolean inMoveRange(Unit u, Position to) {
+        return getMoveRange(u).contains(to);
+    }
+
+    private MoveRange computeMoveRange(Unit u) {
+        Position at = u.getPos();
+        if (at == null) return new MoveRange(u, map.getWidth(), rangeTiles, new int[0], 0);
+        WeightedPathfinder wp = getWeightedPathfinder();
+        rangeCount = 0;
+        wp.reachable(map.index(at.x, at.y), u.getType().getMovePoints(), (x, y) -> moveCost(u, x, y),
+                this::collectRangeTile);
+        int[] costs = new int[rangeCount];
+        for (int k = 0; k < rangeCount; k++) costs[k] = wp.cost(rangeTiles[k]);
+        return new MoveRange(u, map.getWidth(), rangeTiles, costs, rangeCount);
+    }
+
+    private void collectRangeTile(int index) {
+        if (rangeCount == rangeTiles.length) rangeTiles = Arrays.copyOf(rangeTiles, rangeCount * 2);
+        rangeTiles[rangeCount++] = index;
+    }
+
+    // Puts a new unit on the map with its top-left corner at topLeft and hands it to its owner
+    public boolean spawnUnit(Unit u, Position topLeft) {
+        if (topLeft == null || !fitsUnit(u, topLeft.x, topLeft.y)) return false;
+        u.setPos(topLeft);
+        setFootprint(u, topLeft, u);
+        u.getOwner().addUnit(u);
+        return true;
+    }
+
+    public void removeUnit(Unit u) {
+        if (u.getPos() != null) setFootprint(u, u.getPos(), null);
+        u.getOwner().removeUnit(u);
+        u.setPos(null);
+    }
+
+    private void setFootprint(Unit u, Position topLeft, Unit value) {
+        int size = u.getSize();
+        for (int yy = topLeft.y; yy < topLeft.y + size; yy++) {
+            for (int xx = topLeft.x; xx < topLeft.x + size; xx++) {
+                if (!map.inBounds(xx, yy)) continue;
+                if (value == null && map.getUnit(xx, yy) != u) continue;
+                map.setUnit(xx, yy, value);
+            }
+        }
+    }
+
+    // to is the new top-left corner; from may be any tile the unit covers
     public boolean moveUnit(Player mover, Position from, Position to) {
-        Tile a = map.getTile(from.x, from.y);
-        Tile b = map.getTile(to.x, to.y);
-        if (a == null || b == null) return false;
-        Unit u = a.getUnit();
+        Unit u = unitAt(from);
         if (u == null || u.getOwner() != mover) return false;
-        if (!b.getType().isAccessible()) return false;
-        if (b.getBuilding() != null) return false;
-        if (b.getUnit() != null) return false;
+        if (!fitsUnit(u, to.x, to.y)) return false;
 
-        a.setUnit(null);
-        b.setUnit(u);
+        setFootprint(u, u.getPos() != null ? u.getPos() : from, null);
         u.setPos(to);
+        setFootprint(u, to, u);
         return true;
     }
 
@@ -91,42 +275,38 @@ public class GameContext {
     }
 
     public Position findBarracksSpawn(Player p, boolean humanSide) {
+        return findBarracksSpawn(p, humanSide, 1);
+    }
+
+    // Top-left corner for a size x size unit just above (human) or below (enemy) the barracks
+    public Position findBarracksSpawn(Player p, boolean humanSide, int size) {
         Position tl = findBuildingTopLeft(p, BuildingType.BARRACKS);
         if (tl == null) return null;
 
-        Position spawn = humanSide ? new Position(tl.x, tl.y - 1) : new Position(tl.x, tl.y + 2);
-        if (isFreeForUnit(spawn, false)) return spawn;
-
-        Position alt = humanSide ? new Position(tl.x + 1, tl.y - 1) : new Position(tl.x + 1, tl.y + 2);
-        if (isFreeForUnit(alt, false)) return alt;
-
+        int y = humanSide ? tl.y - size : tl.y + BuildingType.BARRACKS.getHeight();
+        for (int x = tl.x; x < tl.x + BuildingType.BARRACKS.getWidth(); x++) {
+            Position spawn = map.pos(x, y);
+            if (isFreeForUnit(spawn, size > 1)) return spawn;
+        }
         return null;
     }
 
     public boolean canPlaceBuilding(Building b, Position topLeft, Player p) {
         if (b == null || topLeft == null) return false;
-        for (int yy = topLeft.y; yy < topLeft.y + 2; yy++) {
-            for (int xx = topLeft.x; xx < topLeft.x + 2; xx++) {
-                Tile t = map.getTile(xx, yy);
-                if (t == null) return false;
-                if (t.getType() != TileType.GRASS) return false;
-                if (t.getBuilding() != null) return false;
-                if (t.getUnit() != null) return false;
-            }
-        }
-        return true;
+        return map.getPlacementIndex().fits(topLeft.x, topLeft.y, b.getWidth(), b.getHeight());
     }
 
     public void placeBuilding(Building b, Position topLeft, Player p) {
         b.setPosition(topLeft);
         p.addBuilding(b);
-        for (int yy = topLeft.y; yy < topLeft.y + 2; yy++) {
-            for (int xx = topLeft.x; xx < topLeft.x + 2; xx++) {
+        for (int yy = topLeft.y; yy < topLeft.y + b.getHeight(); yy++) {
+            for (int xx = topLeft.x; xx < topLeft.x + b.getWidth(); xx++) {
                 Tile t = map.getTile(xx, yy);
                 t.setBuilding(b);
                 t.setOwner(p);
             }
         }
+        p.getTerritory().addBuilding(b);
     }
 
     public boolean canAttackTarget(Player attackerOwner, Position from, Position target) {
@@ -137,6 +317,7 @@ public class GameContext {
         Unit attacker = a.getUnit();
         if (attacker == null || attacker.getOwner() != attackerOwner) return false;
         if (!combat.inRange(attacker, target)) return false;
+        if (!fog.isVisible(attackerOwner, target.x, target.y)) return false;
 
         if (t.getUnit() != null && t.getUnit().getOwner() != attackerOwner) return true;
         if (t.getBuilding() != null && t.getBuilding().getOwner() != attackerOwner) return true;
@@ -144,6 +325,29 @@ public class GameContext {
         return false;
     }
 
+    // Enemy-occupied tiles the unit at from can attack, found through the spatial index instead of a map scan
+    public List<Position> attackTargets(Player attackerOwner, Position from) {
+        List<Position> out = new ArrayList<>();
+        Unit attacker = unitAt(from);
+        if (attacker == null || attacker.getOwner() != attackerOwner) return out;
+
+        Position at = attacker.getPos() != null ? attacker.getPos() : from;
+        for (Position p : map.getSpatialIndex().enemiesWithin(attackerOwner, at, attacker.getRange())) {
+            if (canAttackTarget(attackerOwner, from, p)) out.add(p);
+        }
+        return out;
+    }
+
+    public Building nearestEnemyBuilding(Player p, Position from, BuildingType type) {
+        return map.getSpatialIndex().nearestEnemyBuilding(p, from, type);
+    }
+
+    // Only buildings p has seen part of; what a player without the whole map in view can aim for
+    public Building nearestKnownEnemyBuilding(Player p, Position from, BuildingType type) {
+        return map.getSpatialIndex().nearestEnemyBuilding(p, from, type,
+                i -> fog.isExplored(p, map.xOf(i), map.yOf(i)));
+    }
+
     public void attackTargetAndMoveIfKilled(Player attackerOwner, Position from, Position target) {
         Tile a = map.getTile(from.x, from.y);
         Tile t = map.getTile(target.x, target.y);
@@ -156,8 +360,7 @@ public class GameContext {
             Unit def = t.getUnit();
             combat.attack(attacker, def);
             if (def.isDead()) {
-                def.getOwner().removeUnit(def);
-                t.setUnit(null);
+                removeUnit(def);
                 moveUnit(attackerOwner, from, target);
             }
             return;
@@ -168,6 +371,7 @@ public class GameContext {
             combat.attack(attacker, b);
             if (b.isDestroyed()) {
                 b.getOwner().removeBuilding(b);
+                b.getOwner().getTerritory().removeBuilding(b);
                 clearBuildingTiles(b);
                 moveUnit(attackerOwner, from, target);
             }
@@ -177,8 +381,8 @@ public class GameContext {
     private void clearBuildingTiles(Building b) {
         Position tl = b.getPosition();
         if (tl == null) return;
-        for (int yy = tl.y; yy < tl.y + 2; yy++) {
-            for (int xx = tl.x; xx < tl.x + 2; xx++) {
+        for (int yy = tl.y; yy < tl.y + b.getHeight(); yy++) {
+            for (int xx = tl.x; xx < tl.x + b.getWidth(); xx++) {
                 Tile t = map.getTile(xx, yy);
                 if (t != null && t.getBuilding() == b) t.setBuilding(null);
             }
@@ -191,14 +395,28 @@ public class GameContext {
         if (a == null || t == null) return false;
 
         Unit u = a.getUnit();
-        if (u == null) return false;
+        if (u == null || u.isBig()) return false;
 
         int dist = Math.abs(from.x - target.x) + Math.abs(from.y - target.y);
-        int allowed = (u.getType() == UnitType.ARCHER) ? 2 : 1;
-        if (dist > allowed || dist == 0) return false;
+        if (dist > collectRange(u) || dist == 0) return false;
 
-        TileType tt = t.getType();
-        return tt == TileType.FOREST || tt == TileType.MOUNTAIN || tt == TileType.WATER;
+        return t.getType().getResource() != null;
+    }
+
+    // Resource tiles the unit at from can collect, looked up in the resource index around it
+    public List<Position> collectTargets(Position from) {
+        List<Position> out = new ArrayList<>();
+        Unit u = unitAt(from);
+        if (u == null) return out;
+
+        for (Position p : map.getResourceIndex().within(from, collectRange(u))) {
+            if (canCollectTarget(from, p)) out.add(p);
+        }
+        return out;
+    }
+
+    private int collectRange(Unit u) {
+        return (u.getType() == UnitType.ARCHER) ? 2 : 1;
     }
 
     public boolean collectTargetAndMove(Position from, Position target) {
@@ -214,22 +432,17 @@ public class GameContext {
         if (t.getUnit() != null) return false;
 
         TileType tt = t.getType();
+        ResourceType res = tt.getResource();
+        if (res == null) return false;
+        economy.grant(u.getOwner(), res, map.getResourceDeposits().harvest(target.x, target.y, HARVEST_AMOUNT));
 
-        if (tt == TileType.FOREST)
-            economy.grant(u.getOwner(), ResourceType.WOOD, 30);
-        else if (tt == TileType.MOUNTAIN)
-            economy.grant(u.getOwner(), ResourceType.STONE, 30);
-        else if (tt == TileType.WATER)
-            economy.grant(u.getOwner(), ResourceType.FOOD, 30);
-        else
-            return false;
+        // The unit only moves in once the tile is used up
+        if (map.getResourceDeposits().remaining(target.x, target.y) > 0) return true;
 
         t.setType(TileType.GRASS);
+        if (tt.getRegrowTurns() > 0) regrowth.schedule(target.x, target.y, tt, regrowth.getTurn() + tt.getRegrowTurns());
 
-        a.setUnit(null);
-        t.setUnit(u);
-        u.setPos(target);
-
+        moveUnit(u.getOwner(), from, target);
         return true;
     }
 
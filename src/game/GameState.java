@@ -1,5 +1,5 @@
 package game;
 
 public enum GameState {
-    MENU, RUNNING, GAME_OVER
+    MENU, LOADING, RUNNING, GAME_OVER
 }
@@ -0,0 +1,53 @@
+package game;
+
+import map.Position;
+import units.Unit;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Top-left corners a unit can move to this turn with what each costs, from one bounded WeightedPathfinder search.
+// Built by GameContext.getMoveRange and shared by the move rule, the AI and the UI until the map or turn changes.
+public class MoveRange {
+    private final Unit unit;
+    private final int width;
+    private final int[] tiles;
+    private final int[] costs;
+
+    // tiles and costs in any matching order; kept sorted by tile for lookups
+    MoveRange(Unit unit, int width, int[] tiles, int[] costs, int count) {
+        this.unit = unit;
+        this.width = width;
+        long[] packed = new long[count];
+        for (int k = 0; k < count; k++) packed[k] = ((long) tiles[k] << 32) | costs[k];
+        Arrays.sort(packed);
+        this.tiles = new int[count];
+        this.costs = new int[count];
+        for (int k = 0; k < count; k++) {
+            this.tiles[k] = (int) (packed[k] >>> 32);
+            this.costs[k] = (int) packed[k];
+        }
+    }
+
+    public Unit getUnit() { return unit; }
+    public int size() { return tiles.length; }
+    public boolean isEmpty() { return tiles.length == 0; }
+
+    public boolean contains(int index) {
+        return Arrays.binarySearch(tiles, index) >= 0;
+    }
+
+    public boolean contains(Position p) {
+        return p.x >= 0 && p.y >= 0 && p.x < width && contains(p.y * width + p.x);
+    }
+
+    // Movement points spent to get there, or -1 if it is out of range
+    public int cost(int index) {
+        int k = Arrays.binarySearch(tiles, index);
+        return k >= 0 ? costs[k] : -1;
+    }
+
+    public void forEach(IntConsumer visit) {
+        for (int t : tiles) visit.accept(t);
+    }
+}
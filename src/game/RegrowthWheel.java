@@ -0,0 +1,122 @@
+package game;
+
+import buildings.Building;
+import map.GameMap;
+import map.MapListener;
+import map.TileType;
+
+import java.util.Arrays;
+
+// Timing wheel of pending regrowths keyed by turn. Each slot holds the tiles due on turns congruent to it,
+// so advancing a turn only walks one slot; entries more than a revolution ahead simply stay put until their
+// turn comes round. Entries are kept in parallel int arrays rather than objects. Building on a tile cancels
+// its regrowth for good, so it doesn't come back once the building is gone.
+public class RegrowthWheel implements MapListener {
+    public interface Visitor {
+        void visit(int x, int y, TileType type, int dueTurn);
+    }
+
+    private static final TileType[] TYPES = TileType.values();
+    private static final int SLOTS = 64;
+    private static final int MASK = SLOTS - 1;
+
+    private final GameMap map;
+    private final int[][] tiles = new int[SLOTS][];
+    private final byte[][] types = new byte[SLOTS][];
+    private final int[][] due = new int[SLOTS][];
+    private final int[] counts = new int[SLOTS];
+    private int turn;
+    private int pending;
+
+    public RegrowthWheel(GameMap map, int turn) {
+        this.map = map;
+        this.turn = turn;
+    }
+
+    public int getTurn() { return turn; }
+    public int getPending() { return pending; }
+
+    public void schedule(int x, int y, TileType type, int dueTurn) {
+        int slot = Math.max(dueTurn, turn + 1) & MASK;
+        int n = counts[slot];
+        if (tiles[slot] == null) {
+            tiles[slot] = new int[16];
+            types[slot] = new byte[16];
+            due[slot] = new int[16];
+        } else if (n == tiles[slot].length) {
+            tiles[slot] = Arrays.copyOf(tiles[slot], n * 2);
+            types[slot] = Arrays.copyOf(types[slot], n * 2);
+            due[slot] = Arrays.copyOf(due[slot], n * 2);
+        }
+        tiles[slot][n] = map.index(x, y);
+        types[slot][n] = (byte) type.ordinal();
+        due[slot][n] = Math.max(dueTurn, turn + 1);
+        counts[slot] = n + 1;
+        pending++;
+    }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) {
+        if (after != null && pending > 0) cancel(map.index(x, y));
+    }
+
+    // Walks every slot; buildings go up rarely enough that no per-tile index is kept
+    private void cancel(int tile) {
+        for (int s = 0; s < SLOTS; s++) {
+            int[] t = tiles[s];
+            int n = counts[s], kept = 0;
+            for (int k = 0; k < n; k++) {
+                if (t[k] == tile) continue;
+                t[kept] = t[k];
+                types[s][kept] = types[s][k];
+                due[s][kept] = due[s][k];
+                kept++;
+            }
+            pending -= n - kept;
+            counts[s] = kept;
+        }
+    }
+
+    public void advance(int newTurn) {
+        while (turn < newTurn) {
+            turn++;
+            fire(turn);
+        }
+    }
+
+    private void fire(int now) {
+        int slot = now & MASK;
+        int n = counts[slot];
+        if (n == 0) return;
+        int[] t = tiles[slot], d = due[slot];
+        byte[] ty = types[slot];
+        int kept = 0;
+
+        for (int k = 0; k < n; k++) {
+            if (d[k] != now) {
+                t[kept] = t[k];
+                ty[kept] = ty[k];
+                d[kept] = d[k];
+                kept++;
+                continue;
+            }
+            pending--;
+            int x = map.xOf(t[k]), y = map.yOf(t[k]);
+            // Something was built here or the tile changed again: the regrowth is dropped
+            if (map.getType(x, y) != TileType.GRASS || map.getBuilding(x, y) != null) continue;
+            // A unit standing on the tile delays regrowth by a turn (next turn is always another slot)
+            if (map.getUnit(x, y) != null) schedule(x, y, TYPES[ty[k]], now + 1);
+            else map.setType(x, y, TYPES[ty[k]]);
+        }
+        counts[slot] = kept;
+    }
+
+    public void forEachPending(Visitor v) {
+        for (int s = 0; s < SLOTS; s++) {
+            for (int k = 0; k < counts[s]; k++) {
+                int i = tiles[s][k];
+                v.visit(map.xOf(i), map.yOf(i), TYPES[types[s][k]], due[s][k]);
+            }
+        }
+    }
+}
@@ -1,14 +1,25 @@
 package game;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
 public class TurnManager {
     private int turn = 1;
     private boolean humanTurn = true;
+    private final List<IntConsumer> turnListeners = new ArrayList<>();
 
     public int getTurn() { return turn; }
     public boolean isHumanTurn() { return humanTurn; }
 
+    // Called with the new turn number whenever a full round has passed
+    public void addTurnListener(IntConsumer l) { turnListeners.add(l); }
+
     public void next() {
         humanTurn = !humanTurn;
-        if (humanTurn) turn++;
+        if (humanTurn) {
+            turn++;
+            for (int i = 0; i < turnListeners.size(); i++) turnListeners.get(i).accept(turn);
+        }
     }
 }
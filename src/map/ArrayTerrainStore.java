@@ -0,0 +1,23 @@
+package map;
+
+public class ArrayTerrainStore implements TerrainStore {
+    private final int width;
+    private final byte[] data;
+
+    public ArrayTerrainStore(int width, int height) {
+        this.width = width;
+        this.data = new byte[width * height];
+    }
+
+    @Override
+    public byte get(int x, int y) { return data[y * width + x]; }
+
+    @Override
+    public void set(int x, int y, byte value) { data[y * width + x] = value; }
+
+    @Override
+    public boolean isConcurrent() { return true; }
+
+    @Override
+    public long residentBytes() { return data.length; }
+}
@@ -0,0 +1,168 @@
+package map;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+// Uniform grid of 16x16 buckets holding flat tile indices; bucket arrays are allocated on first insert.
+// An owner that fills cells lazily sets a loader, which queries call with each cell index before reading it.
+final class BucketGrid {
+    static final int CELL_SHIFT = 4;
+    static final int CELL = 1 << CELL_SHIFT;
+
+    private final int width;
+    private final int height;
+    private final int cellsX;
+    private final int cellsY;
+    private final int[][] cells;
+    private final int[] counts;
+    private int size;
+    private IntConsumer loader;
+
+    BucketGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cellsX = (width + CELL - 1) >> CELL_SHIFT;
+        this.cellsY = (height + CELL - 1) >> CELL_SHIFT;
+        this.cells = new int[cellsX * cellsY][];
+        this.counts = new int[cellsX * cellsY];
+    }
+
+    int size() { return size; }
+    void setLoader(IntConsumer loader) { this.loader = loader; }
+
+    long estimateBytes() {
+        long bytes = (long) cells.length * 8;
+        for (int[] bucket : cells) {
+            if (bucket != null) bytes += (long) bucket.length * 4;
+        }
+        return bytes;
+    }
+
+    void add(int index) {
+        int c = cellOf(index);
+        int[] bucket = cells[c];
+        if (bucket == null) {
+            bucket = new int[4];
+            cells[c] = bucket;
+        } else if (counts[c] == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            cells[c] = bucket;
+        }
+        bucket[counts[c]++] = index;
+        size++;
+    }
+
+    void remove(int index) {
+        int c = cellOf(index);
+        int[] bucket = cells[c];
+        int n = counts[c];
+        for (int i = 0; i < n; i++) {
+            if (bucket[i] == index) {
+                bucket[i] = bucket[n - 1];
+                counts[c] = n - 1;
+                size--;
+                return;
+            }
+        }
+    }
+
+    // Visits every stored index within Manhattan distance r of (x, y)
+    void forEachWithin(int x, int y, int r, IntConsumer visit) {
+        int cx0 = Math.max(0, (x - r) >> CELL_SHIFT), cx1 = Math.min(cellsX - 1, (x + r) >> CELL_SHIFT);
+        int cy0 = Math.max(0, (y - r) >> CELL_SHIFT), cy1 = Math.min(cellsY - 1, (y + r) >> CELL_SHIFT);
+        if (x + r < 0 || y + r < 0) return;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * cellsX + cx;
+                if (loader != null) loader.accept(c);
+                int[] bucket = cells[c];
+                for (int i = 0, n = counts[c]; i < n; i++) {
+                    int idx = bucket[i];
+                    if (Position.manhattan(idx % width, idx / width, x, y) <= r) visit.accept(idx);
+                }
+            }
+        }
+    }
+
+    // Closest accepted index by Manhattan distance, searching rings of buckets outward; -1 if none
+    int nearest(int x, int y, IntPredicate accept) {
+        int ox = Math.min(Math.max(x, 0), width - 1) >> CELL_SHIFT;
+        int oy = Math.min(Math.max(y, 0), height - 1) >> CELL_SHIFT;
+        int maxRing = Math.max(Math.max(ox, cellsX - 1 - ox), Math.max(oy, cellsY - 1 - oy));
+
+        int best = -1;
+        int bestDist = Integer.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every tile in this ring is at least (ring - 1) * CELL + 1 away
+            if (ring > 1 && (ring - 1) * CELL + 1 > bestDist) break;
+            for (int cy = oy - ring; cy <= oy + ring; cy++) {
+                if (cy < 0 || cy >= cellsY) continue;
+                boolean edgeRow = cy == oy - ring || cy == oy + ring;
+                int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+                for (int cx = ox - ring; cx <= ox + ring; cx += step) {
+                    if (cx < 0 || cx >= cellsX) continue;
+                    int c = cy * cellsX + cx;
+                    if (loader != null) loader.accept(c);
+                    int[] bucket = cells[c];
+                    for (int i = 0, n = counts[c]; i < n; i++) {
+                        int idx = bucket[i];
+                        int d = Position.manhattan(idx % width, idx / width, x, y);
+                        if (d < bestDist && accept.test(idx)) {
+                            bestDist = d;
+                            best = idx;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // Up to k accepted indices ordered by Manhattan distance from (x, y)
+    int[] nearestK(int x, int y, int k, IntPredicate accept) {
+        int[] found = new int[k];
+        int[] dist = new int[k];
+        int count = 0;
+        if (k <= 0) return found;
+
+        int ox = Math.min(Math.max(x, 0), width - 1) >> CELL_SHIFT;
+        int oy = Math.min(Math.max(y, 0), height - 1) >> CELL_SHIFT;
+        int maxRing = Math.max(Math.max(ox, cellsX - 1 - ox), Math.max(oy, cellsY - 1 - oy));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (count == k && ring > 1 && (ring - 1) * CELL + 1 > dist[k - 1]) break;
+            for (int cy = oy - ring; cy <= oy + ring; cy++) {
+                if (cy < 0 || cy >= cellsY) continue;
+                boolean edgeRow = cy == oy - ring || cy == oy + ring;
+                int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+                for (int cx = ox - ring; cx <= ox + ring; cx += step) {
+                    if (cx < 0 || cx >= cellsX) continue;
+                    int c = cy * cellsX + cx;
+                    if (loader != null) loader.accept(c);
+                    int[] bucket = cells[c];
+                    for (int i = 0, n = counts[c]; i < n; i++) {
+                        int idx = bucket[i];
+                        int d = Position.manhattan(idx % width, idx / width, x, y);
+                        if (count == k && d >= dist[k - 1]) continue;
+                        if (!accept.test(idx)) continue;
+                        // Insertion into the small sorted result arrays
+                        int pos = count < k ? count++ : k - 1;
+                        while (pos > 0 && dist[pos - 1] > d) {
+                            dist[pos] = dist[pos - 1];
+                            found[pos] = found[pos - 1];
+                            pos--;
+                        }
+                        dist[pos] = d;
+                        found[pos] = idx;
+                    }
+                }
+            }
+        }
+        return count == k ? found : Arrays.copyOf(found, count);
+    }
+
+    private int cellOf(int index) {
+        return ((index / width) >> CELL_SHIFT) * cellsX + ((index % width) >> CELL_SHIFT);
+    }
+}
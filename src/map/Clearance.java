@@ -0,0 +1,128 @@
+package map;
+
+import buildings.Building;
+import units.Unit;
+
+// Clearance map: for every tile, the side of the largest free square (accessible, no building, no unit)
+// having that tile as its top-left corner, capped at MAX. Values are kept per 64x64 chunk and a chunk is only
+// computed the first time something in it is asked about, so paged maps stay paged. A change at (x, y) can only
+// affect the MAX x MAX tiles above and to the left of it, so updates are a small local recompute.
+public class Clearance implements MapListener {
+    public static final int MAX = 4;
+
+    private static final int SHIFT = PagedTerrainStore.CHUNK_SHIFT;
+    private static final int SIZE = 1 << SHIFT;
+    private static final int MASK = SIZE - 1;
+
+    private final GameMap map;
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    // Per chunk, row-major SIZE x SIZE values; null until first touched
+    private final byte[][] chunks;
+    private int loadedChunks;
+
+    Clearance(GameMap map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.chunksX = (width + MASK) >> SHIFT;
+        this.chunks = new byte[chunksX * ((height + MASK) >> SHIFT)][];
+    }
+
+    long estimateBytes() {
+        return (long) chunks.length * 8 + (long) loadedChunks * SIZE * SIZE;
+    }
+
+    public int get(int x, int y) {
+        if (!map.inBounds(x, y)) return 0;
+        int c = (y >> SHIFT) * chunksX + (x >> SHIFT);
+        byte[] values = chunks[c];
+        if (values == null) values = load(c);
+        return values[((y & MASK) << SHIFT) | (x & MASK)];
+    }
+
+    // True if a size x size square with top-left (x, y) is entirely free
+    public boolean fits(int x, int y, int size) {
+        return get(x, y) >= size;
+    }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) {
+        update(x, y);
+    }
+
+    @Override
+    public void unitChanged(int x, int y, Unit before, Unit after) {
+        update(x, y);
+    }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) {
+        update(x, y);
+    }
+
+    // Tiles in chunks not computed yet are skipped; they see the change when their chunk loads
+    private void update(int x, int y) {
+        int x0 = Math.max(0, x - MAX + 1), y0 = Math.max(0, y - MAX + 1);
+        for (int yy = y; yy >= y0; yy--) {
+            for (int xx = x; xx >= x0; xx--) {
+                byte[] values = chunks[(yy >> SHIFT) * chunksX + (xx >> SHIFT)];
+                if (values == null) continue;
+                int v = 0;
+                if (free(xx, yy)) {
+                    v = Math.min(MAX, 1 + Math.min(peek(xx + 1, yy), Math.min(peek(xx, yy + 1), peek(xx + 1, yy + 1))));
+                }
+                values[((yy & MASK) << SHIFT) | (xx & MASK)] = (byte) v;
+            }
+        }
+    }
+
+    // A value for update() to build on: the stored one if its chunk is loaded, otherwise counted from the layers
+    private int peek(int x, int y) {
+        if (!map.inBounds(x, y)) return 0;
+        byte[] values = chunks[(y >> SHIFT) * chunksX + (x >> SHIFT)];
+        return values != null ? values[((y & MASK) << SHIFT) | (x & MASK)] : direct(x, y);
+    }
+
+    private int direct(int x, int y) {
+        int s = 0;
+        while (s < MAX && x + s < width && y + s < height) {
+            for (int k = 0; k <= s; k++) {
+                if (!free(x + s, y + k) || !free(x + k, y + s)) return s;
+            }
+            s++;
+        }
+        return s;
+    }
+
+    // A value only depends on the MAX - 1 tiles to its right and below, so running the recurrence over the chunk
+    // plus a margin that wide gets the chunk's own tiles exact without reading any other chunk's values
+    private byte[] load(int c) {
+        int x0 = (c % chunksX) << SHIFT, y0 = (c / chunksX) << SHIFT;
+        int x1 = Math.min(width, x0 + SIZE + MAX - 1), y1 = Math.min(height, y0 + SIZE + MAX - 1);
+        int w = x1 - x0;
+        byte[] scratch = new byte[w * (y1 - y0)];
+        for (int y = y1 - 1; y >= y0; y--) {
+            for (int x = x1 - 1; x >= x0; x--) {
+                if (!free(x, y)) continue;
+                int i = (y - y0) * w + (x - x0);
+                int right = x + 1 < x1 ? scratch[i + 1] : 0;
+                int down = y + 1 < y1 ? scratch[i + w] : 0;
+                int diag = x + 1 < x1 && y + 1 < y1 ? scratch[i + w + 1] : 0;
+                scratch[i] = (byte) Math.min(MAX, 1 + Math.min(right, Math.min(down, diag)));
+            }
+        }
+        byte[] values = new byte[SIZE * SIZE];
+        for (int y = y0; y < Math.min(y1, y0 + SIZE); y++) {
+            System.arraycopy(scratch, (y - y0) * w, values, (y - y0) << SHIFT, Math.min(w, SIZE));
+        }
+        chunks[c] = values;
+        loadedChunks++;
+        return values;
+    }
+
+    private boolean free(int x, int y) {
+        return map.getType(x, y).isAccessible() && map.getBuilding(x, y) == null && map.getUnit(x, y) == null;
+    }
+}
@@ -0,0 +1,61 @@
+package map;
+
+import buildings.Building;
+import player.Player;
+import units.Unit;
+
+import java.util.BitSet;
+
+// Records which tiles (flat index) and 16x16 regions changed since the last drain.
+// Each consumer registers its own tracker through GameMap.newDirtyTracker().
+public class DirtyTracker implements MapListener {
+    public static final int REGION_SHIFT = 4;
+    public static final int REGION_SIZE = 1 << REGION_SHIFT;
+
+    private final int width;
+    private final int regionsX;
+    private BitSet tiles = new BitSet();
+    private BitSet regions = new BitSet();
+
+    DirtyTracker(GameMap map) {
+        this.width = map.getWidth();
+        this.regionsX = (map.getWidth() + REGION_SIZE - 1) >> REGION_SHIFT;
+    }
+
+    public boolean isDirty() { return !regions.isEmpty(); }
+
+    public int regionX(int region) { return (region % regionsX) << REGION_SHIFT; }
+    public int regionY(int region) { return (region / regionsX) << REGION_SHIFT; }
+
+    public void mark(int x, int y) {
+        tiles.set(y * width + x);
+        regions.set((y >> REGION_SHIFT) * regionsX + (x >> REGION_SHIFT));
+    }
+
+    // Both drains hand back the live set and start a fresh one, so every change is consumed once
+    public BitSet drainTiles() {
+        BitSet out = tiles;
+        tiles = new BitSet();
+        regions = new BitSet();
+        return out;
+    }
+
+    public BitSet drainRegions() {
+        BitSet out = regions;
+        tiles = new BitSet();
+        regions = new BitSet();
+        return out;
+    }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) { mark(x, y); }
+
+    @Override
+    public void unitChanged(int x, int y, Unit before, Unit after) { mark(x, y); }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) { mark(x, y); }
+
+    @Override
+    public void ownerChanged(int x, int y, Player before, Player after) { mark(x, y); }
+}
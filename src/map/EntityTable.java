@@ -0,0 +1,53 @@
+package map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+// Maps entities to small int ids so map layers can store ids instead of references.
+// Ids are reference counted per tile and recycled once no tile points at them; 0 means "none".
+final class EntityTable<T> {
+    private final IdentityHashMap<T, Integer> ids = new IdentityHashMap<>();
+    private final ArrayList<T> entities = new ArrayList<>();
+    private int[] refs = new int[16];
+    private int[] free = new int[16];
+    private int freeCount;
+
+    EntityTable() {
+        entities.add(null);
+    }
+
+    T get(int id) {
+        return id == 0 ? null : entities.get(id);
+    }
+
+    int acquire(T e) {
+        if (e == null) return 0;
+        Integer known = ids.get(e);
+        int id;
+        if (known != null) {
+            id = known;
+        } else {
+            if (freeCount > 0) {
+                id = free[--freeCount];
+                entities.set(id, e);
+            } else {
+                id = entities.size();
+                entities.add(e);
+                if (id >= refs.length) refs = Arrays.copyOf(refs, refs.length * 2);
+            }
+            ids.put(e, id);
+        }
+        refs[id]++;
+        return id;
+    }
+
+    void release(int id) {
+        if (id == 0) return;
+        if (--refs[id] > 0) return;
+        ids.remove(entities.get(id));
+        entities.set(id, null);
+        if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+        free[freeCount++] = id;
+    }
+}
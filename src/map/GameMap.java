@@ -1,25 +1,382 @@
 package map;
 
+import buildings.Building;
+import player.Player;
+import units.Unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Struct-of-arrays storage: every layer is addressed by the flat index y * width + x.
+// Terrain is one byte per tile held by a TerrainStore (in-heap or paged), occupancy and ownership are
+// entity ids resolved through EntityTable.
 public class GameMap {
+    public interface TileVisitor {
+        void visit(int x, int y, int index);
+    }
+
+    public interface TerrainFunction {
+        TileType apply(int x, int y, TileType current);
+    }
+
+    private static final TileType[] TYPES = TileType.values();
+    private static final int POS_BLOCK_SHIFT = 12;
+    private static final int POS_BLOCK_MASK = (1 << POS_BLOCK_SHIFT) - 1;
+
     private final int width;
     private final int height;
-    private final Tile[][] tiles;
+
+    private final TerrainStore terrain;
+    private final IntLayer units;
+    private final IntLayer buildings;
+    private final IntLayer owners;
+
+    private final EntityTable<Unit> unitTable = new EntityTable<>();
+    private final EntityTable<Building> buildingTable = new EntityTable<>();
+    private final EntityTable<Player> playerTable = new EntityTable<>();
+
+    private final Position[][] positions;
+    private final SpatialIndex spatial;
+
+    // On foot, then woodland
+    private final Passability[] passability = new Passability[2];
+    private PlacementIndex placement;
+    private ResourceIndex resources;
+    private ResourceDeposits deposits;
+    private Clearance clearance;
+    private StartLayout startLayout;
+    private ImportReport importReport;
+    private long seed;
+
+    private final List<MapListener> listeners = new ArrayList<>();
+    private int modCount;
 
     public GameMap(int width, int height) {
+        this(width, height, new ArrayTerrainStore(width, height));
+    }
+
+    public GameMap(int width, int height, TerrainStore terrain) {
+        if ((long) width * height > Integer.MAX_VALUE) throw new IllegalArgumentException("Map too large: " + width + "x" + height);
         this.width = width;
         this.height = height;
-        this.tiles = new Tile[height][width];
+        int n = width * height;
+        this.terrain = terrain;
+        this.units = new IntLayer(n);
+        this.buildings = new IntLayer(n);
+        this.owners = new IntLayer(n);
+        this.positions = new Position[(n + POS_BLOCK_MASK) >>> POS_BLOCK_SHIFT][];
+        this.spatial = new SpatialIndex(this);
+        listeners.add(spatial);
+    }
+
+    public TerrainStore getTerrainStore() { return terrain; }
+    public SpatialIndex getSpatialIndex() { return spatial; }
+
+    // Built on first use so freshly generated maps don't pay for it while terrain is being filled
+    public Passability getPassability() {
+        return getPassability(false);
+    }
+
+    public Passability getPassability(boolean woodland) {
+        int k = woodland ? 1 : 0;
+        if (passability[k] == null) {
+            passability[k] = new Passability(this, woodland);
+            listeners.add(passability[k]);
+        }
+        return passability[k];
+    }
+
+    public PlacementIndex getPlacementIndex() {
+        if (placement == null) {
+            placement = new PlacementIndex(this);
+            listeners.add(placement);
+        }
+        return placement;
+    }
+
+    public ResourceIndex getResourceIndex() {
+        if (resources == null) {
+            resources = new ResourceIndex(this);
+            listeners.add(resources);
+        }
+        return resources;
+    }
+
+    // Only big units need it, so maps without them never build it
+    public Clearance getClearance() {
+        if (clearance == null) {
+            clearance = new Clearance(this);
+            listeners.add(clearance);
+        }
+        return clearance;
+    }
+
+    public ResourceDeposits getResourceDeposits() {
+        if (deposits == null) {
+            deposits = new ResourceDeposits(this);
+            listeners.add(deposits);
+        }
+        return deposits;
+    }
+
+    // Chosen by the generator's start planner; null for maps that never had one
+    public StartLayout getStartLayout() { return startLayout; }
+    public void setStartLayout(StartLayout startLayout) { this.startLayout = startLayout; }
+
+    // How the map was loaded from a file; null for generated maps
+    public ImportReport getImportReport() { return importReport; }
+    public void setImportReport(ImportReport importReport) { this.importReport = importReport; }
+
+    // Seed the terrain was generated from, so the map can be reproduced
+    public long getSeed() { return seed; }
+    public void setSeed(long seed) { this.seed = seed; }
+
+    // Rough heap footprint of the terrain, the entity layers and every index built so far. Per-game state kept
+    // outside the map (fog, territory) is not included.
+    public long estimateBytes() {
+        long bytes = terrain.residentBytes() + (long) positions.length * 8 + spatial.estimateBytes();
+        bytes += units.estimateBytes() + buildings.estimateBytes() + owners.estimateBytes();
+        for (Passability p : passability) if (p != null) bytes += p.estimateBytes();
+        if (placement != null) bytes += placement.estimateBytes();
+        if (clearance != null) bytes += clearance.estimateBytes();
+        if (resources != null) bytes += resources.estimateBytes();
+        if (deposits != null) bytes += deposits.estimateBytes();
+        return bytes;
+    }
+
+    // Incremented on every layer change; cheap way for caches to notice that anything moved
+    public int getModCount() { return modCount; }
+
+    public void addListener(MapListener l) { listeners.add(l); }
+    public void removeListener(MapListener l) { listeners.remove(l); }
+
+    public DirtyTracker newDirtyTracker() {
+        DirtyTracker t = new DirtyTracker(this);
+        listeners.add(t);
+        return t;
     }
 
     public int getWidth() { return width; }
     public int getHeight() { return height; }
 
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    public int xOf(int index) { return index % width; }
+    public int yOf(int index) { return index / width; }
+
+    // Interned positions: repeated lookups of the same cell return the same instance
+    public Position pos(int x, int y) {
+        if (!inBounds(x, y)) return new Position(x, y);
+        return positionAt(index(x, y));
+    }
+
+    public Position positionAt(int index) {
+        Position[] block = positions[index >>> POS_BLOCK_SHIFT];
+        if (block == null) {
+            block = new Position[1 << POS_BLOCK_SHIFT];
+            positions[index >>> POS_BLOCK_SHIFT] = block;
+        }
+        Position p = block[index & POS_BLOCK_MASK];
+        if (p == null) {
+            p = new Position(index % width, index / width);
+            block[index & POS_BLOCK_MASK] = p;
+        }
+        return p;
+    }
+
     public Tile getTile(int x, int y) {
-        if (x < 0 || y < 0 || x >= width || y >= height) return null;
-        return tiles[y][x];
+        if (!inBounds(x, y)) return null;
+        return new Tile(this, x, y);
     }
 
-    public void setTile(int x, int y, Tile t) {
-        tiles[y][x] = t;
+    public TileType getType(int x, int y) {
+        return TYPES[terrain.get(x, y)];
+    }
+
+    public void setType(int x, int y, TileType type) {
+        TileType before = TYPES[terrain.get(x, y)];
+        if (before == type) return;
+        terrain.set(x, y, (byte) type.ordinal());
+        modCount++;
+        for (int i = 0; i < listeners.size(); i++) listeners.get(i).terrainChanged(x, y, before, type);
+    }
+
+    public Unit getUnit(int x, int y) {
+        return unitTable.get(units.get(index(x, y)));
+    }
+
+    public void setUnit(int x, int y, Unit u) {
+        int i = index(x, y);
+        Unit before = unitTable.get(units.get(i));
+        if (before == u) return;
+        int id = unitTable.acquire(u);
+        unitTable.release(units.get(i));
+        units.set(i, id);
+        modCount++;
+        for (int k = 0; k < listeners.size(); k++) listeners.get(k).unitChanged(x, y, before, u);
+    }
+
+    public Building getBuilding(int x, int y) {
+        return buildingTable.get(buildings.get(index(x, y)));
+    }
+
+    public void setBuilding(int x, int y, Building b) {
+        int i = index(x, y);
+        Building before = buildingTable.get(buildings.get(i));
+        if (before == b) return;
+        int id = buildingTable.acquire(b);
+        buildingTable.release(buildings.get(i));
+        buildings.set(i, id);
+        modCount++;
+        for (int k = 0; k < listeners.size(); k++) listeners.get(k).buildingChanged(x, y, before, b);
+    }
+
+    public Player getOwner(int x, int y) {
+        return playerTable.get(owners.get(index(x, y)));
+    }
+
+    public void setOwner(int x, int y, Player p) {
+        int i = index(x, y);
+        Player before = playerTable.get(owners.get(i));
+        if (before == p) return;
+        int id = playerTable.acquire(p);
+        playerTable.release(owners.get(i));
+        owners.set(i, id);
+        modCount++;
+        for (int k = 0; k < listeners.size(); k++) listeners.get(k).ownerChanged(x, y, before, p);
+    }
+
+    public void forEachTile(TileVisitor v) {
+        forEachInRegion(0, 0, width, height, v);
+    }
+
+    // Row-major walk over [x0, x1) x [y0, y1), clamped to the map
+    public void forEachInRegion(int x0, int y0, int x1, int y1, TileVisitor v) {
+        int ex = Math.min(x1, width), ey = Math.min(y1, height);
+        for (int y = Math.max(0, y0); y < ey; y++) {
+            int base = y * width;
+            for (int x = Math.max(0, x0); x < ex; x++) v.visit(x, y, base + x);
+        }
+    }
+
+    public void forEachInRegion(MapRegion r, TileVisitor v) {
+        forEachInRegion(r.x0, r.y0, r.x1, r.y1, v);
+    }
+
+    public Spliterator.OfInt rowSpliterator() {
+        return IntStream.range(0, height).spliterator();
+    }
+
+    public IntStream rows(boolean parallel) {
+        return StreamSupport.intStream(rowSpliterator(), parallel);
+    }
+
+    // Square chunks in row-major chunk order; splits hand out contiguous halves of the chunk range
+    public Spliterator<MapRegion> chunkSpliterator(int chunkSize) {
+        int cx = (width + chunkSize - 1) / chunkSize;
+        int cy = (height + chunkSize - 1) / chunkSize;
+        return new ChunkSpliterator(chunkSize, cx, 0, cx * cy);
+    }
+
+    public Stream<MapRegion> chunks(int chunkSize, boolean parallel) {
+        return StreamSupport.stream(chunkSpliterator(chunkSize), parallel);
+    }
+
+    // Runs the visitor over every row on the fork-join pool when the terrain store allows it
+    public void parallelForEachRow(IntConsumer row) {
+        rows(terrain.isConcurrent()).forEach(row);
+    }
+
+    public void mapTerrain(TerrainFunction f) {
+        mapTerrain(f, false);
+    }
+
+    public void parallelMapTerrain(TerrainFunction f) {
+        mapTerrain(f, terrain.isConcurrent());
+    }
+
+    // Rows are rewritten independently; each row records (x << 8 | old ordinal) for the tiles it changed so
+    // listeners can be told afterwards on the calling thread
+    private void mapTerrain(TerrainFunction f, boolean parallel) {
+        int[][] changes = new int[height][];
+        int[] changeCounts = new int[height];
+
+        rows(parallel).forEach(y -> {
+            int[] rec = null;
+            int n = 0;
+            for (int x = 0; x < width; x++) {
+                byte old = terrain.get(x, y);
+                TileType now = f.apply(x, y, TYPES[old]);
+                if (now.ordinal() == old) continue;
+                terrain.set(x, y, (byte) now.ordinal());
+                if (rec == null) rec = new int[16];
+                else if (n == rec.length) rec = Arrays.copyOf(rec, n * 2);
+                rec[n++] = (x << 8) | old;
+            }
+            changes[y] = rec;
+            changeCounts[y] = n;
+        });
+
+        for (int y = 0; y < height; y++) {
+            int[] rec = changes[y];
+            for (int k = 0; k < changeCounts[y]; k++) {
+                int x = rec[k] >>> 8;
+                TileType before = TYPES[rec[k] & 0xFF];
+                TileType after = TYPES[terrain.get(x, y)];
+                modCount++;
+                for (int i = 0; i < listeners.size(); i++) listeners.get(i).terrainChanged(x, y, before, after);
+            }
+        }
+    }
+
+    private final class ChunkSpliterator implements Spliterator<MapRegion> {
+        private final int size;
+        private final int chunksX;
+        private int next;
+        private final int end;
+
+        ChunkSpliterator(int size, int chunksX, int next, int end) {
+            this.size = size;
+            this.chunksX = chunksX;
+            this.next = next;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super MapRegion> action) {
+            if (next >= end) return false;
+            int c = next++;
+            int x0 = (c % chunksX) * size, y0 = (c / chunksX) * size;
+            action.accept(new MapRegion(x0, y0, Math.min(width, x0 + size), Math.min(height, y0 + size)));
+            return true;
+        }
+
+        @Override
+        public Spliterator<MapRegion> trySplit() {
+            int mid = (next + end) >>> 1;
+            if (mid <= next) return null;
+            Spliterator<MapRegion> prefix = new ChunkSpliterator(size, chunksX, next, mid);
+            next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() { return end - next; }
+
+        @Override
+        public int characteristics() { return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE; }
     }
 }
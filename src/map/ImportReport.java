@@ -0,0 +1,21 @@
+package map;
+
+// Size of an imported map, how long the load took and the heap it peaked at
+public class ImportReport {
+    public final int width;
+    public final int height;
+    public final long millis;
+    public final long peakHeapBytes;
+
+    public ImportReport(int width, int height, long millis, long peakHeapBytes) {
+        this.width = width;
+        this.height = height;
+        this.millis = millis;
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " in " + millis + " ms, peak heap " + (peakHeapBytes >> 20) + " MB";
+    }
+}
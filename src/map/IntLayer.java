@@ -0,0 +1,53 @@
+package map;
+
+// Flat int layer split into fixed blocks that are only allocated once a non-zero value is written,
+// so occupancy layers of huge, mostly empty maps stay small
+final class IntLayer {
+    interface Visitor {
+        void visit(int index, int value);
+    }
+
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    private final int[][] blocks;
+
+    IntLayer(int size) {
+        this.blocks = new int[(size + BLOCK_MASK) >>> BLOCK_SHIFT][];
+    }
+
+    long estimateBytes() {
+        long bytes = (long) blocks.length * 8;
+        for (int[] b : blocks) {
+            if (b != null) bytes += (long) b.length * 4;
+        }
+        return bytes;
+    }
+
+    int get(int i) {
+        int[] b = blocks[i >>> BLOCK_SHIFT];
+        return b == null ? 0 : b[i & BLOCK_MASK];
+    }
+
+    void set(int i, int v) {
+        int[] b = blocks[i >>> BLOCK_SHIFT];
+        if (b == null) {
+            if (v == 0) return;
+            b = new int[1 << BLOCK_SHIFT];
+            blocks[i >>> BLOCK_SHIFT] = b;
+        }
+        b[i & BLOCK_MASK] = v;
+    }
+
+    // Visits non-zero entries in index order, skipping blocks that were never written
+    void forEachNonZero(Visitor v) {
+        for (int k = 0; k < blocks.length; k++) {
+            int[] b = blocks[k];
+            if (b == null) continue;
+            int base = k << BLOCK_SHIFT;
+            for (int j = 0; j < b.length; j++) {
+                if (b[j] != 0) v.visit(base + j, b[j]);
+            }
+        }
+    }
+}
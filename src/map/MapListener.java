@@ -0,0 +1,13 @@
+package map;
+
+import buildings.Building;
+import player.Player;
+import units.Unit;
+
+// Notified by GameMap after a tile layer actually changed value
+public interface MapListener {
+    default void terrainChanged(int x, int y, TileType before, TileType after) {}
+    default void unitChanged(int x, int y, Unit before, Unit after) {}
+    default void buildingChanged(int x, int y, Building before, Building after) {}
+    default void ownerChanged(int x, int y, Player before, Player after) {}
+}
@@ -0,0 +1,23 @@
+package map;
+
+// Half-open rectangle of tiles [x0, x1) x [y0, y1)
+public class MapRegion {
+    public final int x0;
+    public final int y0;
+    public final int x1;
+    public final int y1;
+
+    public MapRegion(int x0, int y0, int x1, int y1) {
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+    }
+
+    public int getWidth() { return x1 - x0; }
+    public int getHeight() { return y1 - y0; }
+
+    public boolean contains(int x, int y) {
+        return x >= x0 && y >= y0 && x < x1 && y < y1;
+    }
+}
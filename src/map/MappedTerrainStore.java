@@ -0,0 +1,56 @@
+package map;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Terrain read straight from a row-major file of TileType ordinals through a private (copy-on-write) mapping.
+// Nothing is copied onto the heap and the file itself is never modified; the OS pages tiles in as they are read.
+public class MappedTerrainStore implements TerrainStore {
+    private final int width;
+    private final MappedByteBuffer data;
+
+    public MappedTerrainStore(Path file, int width, int height) {
+        this.width = width;
+        long size = (long) width * height;
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Map too large: " + width + "x" + height);
+        try {
+            if (Files.size(file) != size) throw new IllegalArgumentException(file + " has " + Files.size(file) + " bytes, expected " + size);
+            // A private mapping needs a writable channel even though writes never reach the file; read-only files
+            // are mapped through a temporary copy instead
+            Path source = file;
+            if (!Files.isWritable(file)) {
+                source = Files.createTempFile("goldencastle-import", ".raw");
+                Files.copy(file, source, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // Mappings stay valid after the channel is closed, and the copy after it is deleted
+            try (FileChannel ch = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.data = ch.map(FileChannel.MapMode.PRIVATE, 0, size);
+            } finally {
+                if (source != file) PagedTerrainStore.discardTemp(source);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map terrain file " + file, e);
+        }
+    }
+
+    @Override
+    public byte get(int x, int y) { return data.get(y * width + x); }
+
+    @Override
+    public void set(int x, int y, byte value) { data.put(y * width + x, value); }
+
+    // Bulk copy of part of a row, for importers that validate or convert the data
+    public void getRow(int y, int x0, byte[] out, int len) { data.get(y * width + x0, out, 0, len); }
+
+    @Override
+    public boolean isConcurrent() { return true; }
+
+    @Override
+    public long residentBytes() { return 0; }
+}
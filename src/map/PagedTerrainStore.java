@@ -0,0 +1,163 @@
+package map;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Terrain split into 64x64 chunks kept in a memory-mapped file.
+// Only the most recently used chunks live on the heap; cold ones are written back and evicted.
+// Chunks that were never touched are produced on demand by the Filler, so the world is generated lazily.
+public class PagedTerrainStore implements TerrainStore {
+    public static final int CHUNK_SHIFT = 6;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_BYTES = CHUNK_SIZE * CHUNK_SIZE;
+    private static final int CHUNKS_PER_SEGMENT = (1 << 30) / CHUNK_BYTES;
+
+    public interface Filler {
+        // out is row-major with a stride of CHUNK_SIZE; only the w x h corner is inside the map
+        void fill(int x0, int y0, int w, int h, byte[] out);
+    }
+
+    private static final class Chunk {
+        final byte[] data = new byte[CHUNK_BYTES];
+        boolean dirty;
+    }
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final int maxResident;
+    private final Filler filler;
+
+    private final MappedByteBuffer[] segments;
+    private final BitSet onDisk = new BitSet();
+    private final LinkedHashMap<Integer, Chunk> resident;
+
+    private int lastKey = -1;
+    private Chunk last;
+
+    public PagedTerrainStore(int width, int height, int maxResident, Filler filler) {
+        this(width, height, maxResident, filler, null);
+    }
+
+    public PagedTerrainStore(int width, int height, int maxResident, Filler filler, Path file) {
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.maxResident = Math.max(1, maxResident);
+        this.filler = filler;
+
+        int chunks = chunksX * ((height + CHUNK_MASK) >> CHUNK_SHIFT);
+        this.segments = mapFile(file, chunks);
+
+        this.resident = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Chunk> eldest) {
+                if (size() <= PagedTerrainStore.this.maxResident) return false;
+                writeBack(eldest.getKey(), eldest.getValue());
+                if (eldest.getKey() == lastKey) {
+                    lastKey = -1;
+                    last = null;
+                }
+                return true;
+            }
+        };
+    }
+
+    // Temp files go as soon as they are mapped so dropped maps leave nothing behind; systems that refuse to delete
+    // a mapped file get it removed on exit instead
+    static void discardTemp(Path f) {
+        try {
+            Files.deleteIfExists(f);
+        } catch (IOException e) {
+            f.toFile().deleteOnExit();
+        }
+    }
+
+    private static MappedByteBuffer[] mapFile(Path file, int chunks) {
+        try {
+            Path f = file != null ? file : Files.createTempFile("goldencastle-map", ".chunks");
+            int segCount = (chunks + CHUNKS_PER_SEGMENT - 1) / CHUNKS_PER_SEGMENT;
+            MappedByteBuffer[] segs = new MappedByteBuffer[segCount];
+            // Mappings stay valid after the channel is closed, and a temp file after it is deleted
+            try (RandomAccessFile raf = new RandomAccessFile(f.toFile(), "rw");
+                 FileChannel ch = raf.getChannel()) {
+                raf.setLength((long) chunks * CHUNK_BYTES);
+                for (int s = 0; s < segCount; s++) {
+                    long off = (long) s * CHUNKS_PER_SEGMENT * CHUNK_BYTES;
+                    long len = (long) Math.min(CHUNKS_PER_SEGMENT, chunks - s * CHUNKS_PER_SEGMENT) * CHUNK_BYTES;
+                    segs[s] = ch.map(FileChannel.MapMode.READ_WRITE, off, len);
+                }
+            } finally {
+                if (file == null) discardTemp(f);
+            }
+            return segs;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map terrain file", e);
+        }
+    }
+
+    @Override
+    public byte get(int x, int y) {
+        return chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT).data[((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(int x, int y, byte value) {
+        Chunk c = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        c.data[((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK)] = value;
+        c.dirty = true;
+    }
+
+    public int getResidentChunks() { return resident.size(); }
+
+    @Override
+    public long residentBytes() { return (long) maxResident * CHUNK_BYTES; }
+
+    public void flush() {
+        for (var e : resident.entrySet()) writeBack(e.getKey(), e.getValue());
+    }
+
+    private Chunk chunk(int cx, int cy) {
+        int key = cy * chunksX + cx;
+        if (key == lastKey) return last;
+
+        Chunk c = resident.get(key);
+        if (c == null) {
+            c = load(key, cx, cy);
+            resident.put(key, c);
+        }
+        lastKey = key;
+        last = c;
+        return c;
+    }
+
+    private Chunk load(int key, int cx, int cy) {
+        Chunk c = new Chunk();
+        if (onDisk.get(key)) {
+            segments[key / CHUNKS_PER_SEGMENT].get((key % CHUNKS_PER_SEGMENT) * CHUNK_BYTES, c.data);
+        } else if (filler != null) {
+            int x0 = cx << CHUNK_SHIFT, y0 = cy << CHUNK_SHIFT;
+            filler.fill(x0, y0, Math.min(CHUNK_SIZE, width - x0), Math.min(CHUNK_SIZE, height - y0), c.data);
+            c.dirty = true;
+        }
+        return c;
+    }
+
+    private void writeBack(int key, Chunk c) {
+        if (!c.dirty) return;
+        segments[key / CHUNKS_PER_SEGMENT].put((key % CHUNKS_PER_SEGMENT) * CHUNK_BYTES, c.data);
+        onDisk.set(key);
+        c.dirty = false;
+    }
+}
@@ -0,0 +1,239 @@
+package map;
+
+import buildings.Building;
+import units.Unit;
+
+import java.util.Arrays;
+
+// Passability bits (open terrain without a building) plus connected-component labels over them. A map keeps one
+// layer for units on foot and one for woodland units, to whom forest is open too, so pathing agrees with
+// UnitType.canEnter.
+// Bits are kept per 64x64 chunk, one long per tile row, and a chunk is only read from the layers the first time
+// something in it is asked about, so paged maps stay paged. Component labels cover the whole map and are built on
+// the first component query; large maps route through HierarchicalPathfinder and never ask.
+// Opening a tile merges neighbouring components through a union-find over labels; closing one only forces a
+// full relabel when the local ring test says the component might have split. Units never affect components,
+// they are tracked separately so callers can ask for "free" tiles.
+public class Passability implements MapListener {
+    // Ring around a tile in walking order; even slots are the 4-neighbours
+    private static final int[] RING_DX = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final int[] RING_DY = {-1, -1, 0, 1, 1, 1, 0, -1};
+    // Same chunking as PagedTerrainStore; a chunk row fits one long
+    private static final int SHIFT = PagedTerrainStore.CHUNK_SHIFT;
+    private static final int SIZE = 1 << SHIFT;
+    private static final int MASK = SIZE - 1;
+
+    private final GameMap map;
+    private final boolean woodland;
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    // Per chunk: SIZE rows of passable bits, then SIZE rows of unit bits; null until first touched
+    private final long[][] chunks;
+    private int loadedChunks;
+
+    private int[] label;
+    private int[] parent = new int[64];
+    private int nextLabel;
+    private boolean stale = true;
+
+    Passability(GameMap map, boolean woodland) {
+        this.map = map;
+        this.woodland = woodland;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.chunksX = (width + MASK) >> SHIFT;
+        this.chunks = new long[chunksX * ((height + MASK) >> SHIFT)][];
+    }
+
+    // Chunk bits plus labels once built
+    long estimateBytes() {
+        long bytes = (long) chunks.length * 8 + (long) loadedChunks * SIZE * 16;
+        return label == null ? bytes : bytes + (long) label.length * 4;
+    }
+
+    // Terrain a unit walks on: accessible tiles, plus anything with a move cost for woodland units
+    public static boolean opens(TileType t, boolean woodland) {
+        return t.isAccessible() || (woodland && t.getMoveCost() > 0);
+    }
+
+    public boolean isWoodland() { return woodland; }
+
+    public boolean isPassable(int x, int y) {
+        return map.inBounds(x, y) && (chunk(x, y)[y & MASK] & (1L << (x & MASK))) != 0;
+    }
+
+    public boolean isPassable(int index) { return isPassable(index % width, index / width); }
+
+    // Passable and not occupied by a unit
+    public boolean isFree(int x, int y) {
+        if (!map.inBounds(x, y)) return false;
+        long[] bits = chunk(x, y);
+        int r = y & MASK;
+        return ((bits[r] & ~bits[SIZE + r]) & (1L << (x & MASK))) != 0;
+    }
+
+    public boolean isFree(int index) { return isFree(index % width, index / width); }
+
+    private long[] chunk(int x, int y) {
+        int c = (y >> SHIFT) * chunksX + (x >> SHIFT);
+        long[] bits = chunks[c];
+        return bits != null ? bits : load(c);
+    }
+
+    private long[] load(int c) {
+        int x0 = (c % chunksX) << SHIFT, y0 = (c / chunksX) << SHIFT;
+        long[] bits = new long[2 * SIZE];
+        map.forEachInRegion(x0, y0, x0 + SIZE, y0 + SIZE, (x, y, i) -> {
+            if (opens(map.getType(x, y), woodland) && map.getBuilding(x, y) == null) bits[y - y0] |= 1L << (x & MASK);
+            if (map.getUnit(x, y) != null) bits[SIZE + y - y0] |= 1L << (x & MASK);
+        });
+        chunks[c] = bits;
+        loadedChunks++;
+        return bits;
+    }
+
+    // Component id of a passable tile, 0 for blocked tiles; only stable until the next map change
+    public int component(int index) {
+        if (stale) relabel();
+        int l = label[index];
+        return l == 0 ? 0 : find(l);
+    }
+
+    public boolean connected(int a, int b) {
+        int ca = component(a);
+        return ca != 0 && ca == component(b);
+    }
+
+    public boolean canReachAny(int start, int[] goals) {
+        int c = component(start);
+        if (c == 0) return false;
+        for (int g : goals) {
+            if (component(g) == c) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) {
+        update(x, y);
+    }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) {
+        update(x, y);
+    }
+
+    @Override
+    public void unitChanged(int x, int y, Unit before, Unit after) {
+        long[] bits = chunks[(y >> SHIFT) * chunksX + (x >> SHIFT)];
+        if (bits == null) return;
+        if (after != null) bits[SIZE + (y & MASK)] |= 1L << (x & MASK);
+        else bits[SIZE + (y & MASK)] &= ~(1L << (x & MASK));
+    }
+
+    // Unloaded chunks read the layers when they load; labels are only live once every chunk has been loaded
+    private void update(int x, int y) {
+        long[] bits = chunks[(y >> SHIFT) * chunksX + (x >> SHIFT)];
+        if (bits == null) return;
+        int i = y * width + x;
+        boolean now = opens(map.getType(x, y), woodland) && map.getBuilding(x, y) == null;
+        long bit = 1L << (x & MASK);
+        if (now == ((bits[y & MASK] & bit) != 0)) return;
+        if (now) bits[y & MASK] |= bit;
+        else bits[y & MASK] &= ~bit;
+        if (stale) return;
+
+        if (now) open(x, y, i);
+        else close(x, y, i);
+    }
+
+    private void open(int x, int y, int i) {
+        int root = 0;
+        for (int k = 0; k < 8; k += 2) {
+            int nx = x + RING_DX[k], ny = y + RING_DY[k];
+            if (!isPassable(nx, ny)) continue;
+            int r = find(label[ny * width + nx]);
+            if (root == 0) root = r;
+            else if (r != root) parent[r] = root;
+        }
+        label[i] = root != 0 ? root : newLabel();
+    }
+
+    private void close(int x, int y, int i) {
+        label[i] = 0;
+
+        // The component can only split if the remaining neighbours fall into more than one run around the ring
+        int start = -1;
+        for (int k = 0; k < 8; k++) {
+            if (!ringPassable(x, y, k)) {
+                start = k;
+                break;
+            }
+        }
+        if (start < 0) return;
+
+        int runsWithNeighbour = 0;
+        boolean inRun = false, runHasNeighbour = false;
+        for (int s = 1; s <= 8; s++) {
+            int k = (start + s) & 7;
+            if (ringPassable(x, y, k)) {
+                inRun = true;
+                if ((k & 1) == 0) runHasNeighbour = true;
+            } else if (inRun) {
+                if (runHasNeighbour) runsWithNeighbour++;
+                inRun = false;
+                runHasNeighbour = false;
+            }
+        }
+        if (runsWithNeighbour > 1) stale = true;
+    }
+
+    private boolean ringPassable(int x, int y, int k) {
+        return isPassable(x + RING_DX[k], y + RING_DY[k]);
+    }
+
+    private int newLabel() {
+        int l = ++nextLabel;
+        if (l >= parent.length) parent = Arrays.copyOf(parent, parent.length * 2);
+        parent[l] = l;
+        return l;
+    }
+
+    private int find(int l) {
+        while (parent[l] != l) {
+            parent[l] = parent[parent[l]];
+            l = parent[l];
+        }
+        return l;
+    }
+
+    // Full flood labelling; only runs on the first component query and after a possible split
+    private void relabel() {
+        if (label == null) label = new int[width * height];
+        else Arrays.fill(label, 0);
+        nextLabel = 0;
+        int[] queue = new int[64];
+        for (int start = 0; start < label.length; start++) {
+            if (label[start] != 0 || !isPassable(start)) continue;
+            int l = newLabel();
+            label[start] = l;
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            while (head < tail) {
+                int cur = queue[head++];
+                int cx = cur % width, cy = cur / width;
+                for (int k = 0; k < 8; k += 2) {
+                    int nx = cx + RING_DX[k], ny = cy + RING_DY[k];
+                    if (!isPassable(nx, ny)) continue;
+                    int nb = ny * width + nx;
+                    if (label[nb] != 0) continue;
+                    label[nb] = l;
+                    if (tail == queue.length) queue = Arrays.copyOf(queue, queue.length * 2);
+                    queue[tail++] = nb;
+                }
+            }
+        }
+        stale = false;
+    }
+}
@@ -0,0 +1,146 @@
+package map;
+
+import buildings.Building;
+import units.Unit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+// Summed-area tables over "blocked for building" tiles (not GRASS or ROAD, or holding a building or unit), one per
+// 64x64 block. A block's table is read from the layers on the first query that touches it; after that a tile
+// that flips only adds +-1 to the table entries below and right of it in its own block, with no layer reads, and
+// paged maps only read the blocks asked about.
+// A footprint inside one block is tested with four lookups; one straddling blocks sums each part.
+public class PlacementIndex implements MapListener {
+    private static final int SHIFT = PagedTerrainStore.CHUNK_SHIFT;
+    private static final int SIZE = 1 << SHIFT;
+    private static final int MASK = SIZE - 1;
+    private static final int STRIDE = SIZE + 1;
+
+    private final GameMap map;
+    private final int width;
+    private final int height;
+    private final int blocksX;
+    // Per block, STRIDE x STRIDE prefix counts in block-local coordinates; null until first needed
+    private final short[][] sats;
+    private int builtBlocks;
+    // firstSite cursors per footprint (w << 16 | h): no site starts before that row-major index
+    private final Map<Integer, int[]> cursors = new HashMap<>();
+
+    PlacementIndex(GameMap map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.blocksX = (width + MASK) >> SHIFT;
+        int blocks = blocksX * ((height + MASK) >> SHIFT);
+        this.sats = new short[blocks][];
+    }
+
+    long estimateBytes() {
+        return (long) sats.length * 8 + (long) builtBlocks * STRIDE * STRIDE * 2;
+    }
+
+    public boolean fits(int x, int y, int w, int h) {
+        if (x < 0 || y < 0 || x + w > width || y + h > height) return false;
+        int x1 = x + w, y1 = y + h;
+        for (int by = y >> SHIFT; by <= (y1 - 1) >> SHIFT; by++) {
+            for (int bx = x >> SHIFT; bx <= (x1 - 1) >> SHIFT; bx++) {
+                int ox = bx << SHIFT, oy = by << SHIFT;
+                if (count(by * blocksX + bx, Math.max(x, ox) - ox, Math.max(y, oy) - oy,
+                        Math.min(x1, ox + SIZE) - ox, Math.min(y1, oy + SIZE) - oy) != 0) return false;
+            }
+        }
+        return true;
+    }
+
+    // Visits the flat index of every valid top-left corner for a w x h footprint inside the given tile rectangle
+    public void forEachSite(int x0, int y0, int x1, int y1, int w, int h, IntConsumer visit) {
+        int ex = Math.min(x1, width - w + 1), ey = Math.min(y1, height - h + 1);
+        for (int y = Math.max(0, y0); y < ey; y++) {
+            for (int x = Math.max(0, x0); x < ex; x++) {
+                if (fits(x, y, w, h)) visit.accept(y * width + x);
+            }
+        }
+    }
+
+    public void forEachSite(int w, int h, IntConsumer visit) {
+        forEachSite(0, 0, width, height, w, h, visit);
+    }
+
+    // First valid top-left in row-major order, or -1. Resumes from where the last call for this footprint left
+    // off; changes that might open an earlier site move the cursor back to it.
+    public int firstSite(int w, int h) {
+        if (w > width || h > height) return -1;
+        int[] cursor = cursors.computeIfAbsent((w << 16) | h, k -> new int[1]);
+        for (int y = cursor[0] / width, x = cursor[0] % width; y + h <= height; y++, x = 0) {
+            for (; x + w <= width; x++) {
+                if (fits(x, y, w, h)) return cursor[0] = y * width + x;
+            }
+        }
+        cursor[0] = width * height;
+        return -1;
+    }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) { update(x, y); }
+
+    @Override
+    public void unitChanged(int x, int y, Unit before, Unit after) { update(x, y); }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) { update(x, y); }
+
+    private boolean computeBlocked(int x, int y) {
+        TileType t = map.getType(x, y);
+        return (t != TileType.GRASS && t != TileType.ROAD) || map.getBuilding(x, y) != null || map.getUnit(x, y) != null;
+    }
+
+    private void update(int x, int y) {
+        int b = (y >> SHIFT) * blocksX + (x >> SHIFT);
+        short[] sat = sats[b];
+        if (sat != null) {
+            int lx = x & MASK, ly = y & MASK;
+            boolean blocked = computeBlocked(x, y);
+            if ((count(b, lx, ly, lx + 1, ly + 1) != 0) == blocked) return;
+            int bw = Math.min(SIZE, width - (x & ~MASK)), bh = Math.min(SIZE, height - (y & ~MASK));
+            int delta = blocked ? 1 : -1;
+            for (int row = ly + 1; row <= bh; row++) {
+                for (int k = row * STRIDE + lx + 1, end = row * STRIDE + bw; k <= end; k++) sat[k] += delta;
+            }
+            // A tile filling up can't open an earlier site
+            if (blocked) return;
+        }
+        for (Map.Entry<Integer, int[]> e : cursors.entrySet()) {
+            int w = e.getKey() >>> 16, h = e.getKey() & 0xFFFF;
+            int earliest = Math.max(0, y - h + 1) * width + Math.max(0, x - w + 1);
+            int[] cursor = e.getValue();
+            if (earliest < cursor[0]) cursor[0] = earliest;
+        }
+    }
+
+    // Blocked tiles in [lx0, lx1) x [ly0, ly1) of block b
+    private int count(int b, int lx0, int ly0, int lx1, int ly1) {
+        short[] sat = table(b);
+        return sat[ly1 * STRIDE + lx1] - sat[ly0 * STRIDE + lx1] - sat[ly1 * STRIDE + lx0] + sat[ly0 * STRIDE + lx0];
+    }
+
+    private short[] table(int b) {
+        short[] sat = sats[b];
+        if (sat != null) return sat;
+        sat = new short[STRIDE * STRIDE];
+        sats[b] = sat;
+        builtBlocks++;
+        int ox = (b % blocksX) << SHIFT, oy = (b / blocksX) << SHIFT;
+        int bw = Math.min(SIZE, width - ox), bh = Math.min(SIZE, height - oy);
+        for (int ly = 0; ly < bh; ly++) {
+            int row = 0;
+            int base = (ly + 1) * STRIDE, above = ly * STRIDE;
+            for (int lx = 0; lx < bw; lx++) {
+                if (computeBlocked(ox + lx, oy + ly)) row++;
+                sat[base + lx + 1] = (short) (sat[above + lx + 1] + row);
+            }
+        }
+        return sat;
+    }
+}
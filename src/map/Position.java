@@ -1,7 +1,5 @@
 package map;
 
-import java.util.Objects;
-
 public class Position {
     public final int x;
     public final int y;
@@ -11,6 +9,20 @@ public class Position {
         this.y = y;
     }
 
+    // Packed form: x in the high 32 bits, y in the low 32 bits
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long packed) { return (int) (packed >> 32); }
+    public static int unpackY(long packed) { return (int) packed; }
+
+    public static int manhattan(int x1, int y1, int x2, int y2) {
+        return Math.abs(x1 - x2) + Math.abs(y1 - y2);
+    }
+
+    public long packed() { return pack(x, y); }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -21,6 +33,6 @@ public class Position {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return 31 * x + y;
     }
 }
@@ -0,0 +1,51 @@
+package map;
+
+// Remaining resource amount per tile. Only the amount already harvested is stored, so untouched tiles
+// (the vast majority) cost nothing and read as full. Any terrain change resets the tile to a fresh deposit.
+public class ResourceDeposits implements MapListener {
+    public interface Visitor {
+        void visit(int x, int y, int remaining);
+    }
+
+    private final GameMap map;
+    private final IntLayer harvested;
+
+    ResourceDeposits(GameMap map) {
+        this.map = map;
+        this.harvested = new IntLayer(map.getWidth() * map.getHeight());
+    }
+
+    long estimateBytes() { return harvested.estimateBytes(); }
+
+    public int remaining(int x, int y) {
+        return map.getType(x, y).getCapacity() - harvested.get(map.index(x, y));
+    }
+
+    // Takes up to amount from the tile and returns what was actually taken
+    public int harvest(int x, int y, int amount) {
+        int i = map.index(x, y);
+        int capacity = map.getType(x, y).getCapacity();
+        int taken = Math.min(amount, capacity - harvested.get(i));
+        if (taken <= 0) return 0;
+        harvested.set(i, harvested.get(i) + taken);
+        return taken;
+    }
+
+    public void setRemaining(int x, int y, int remaining) {
+        int capacity = map.getType(x, y).getCapacity();
+        harvested.set(map.index(x, y), Math.max(0, capacity - Math.max(0, remaining)));
+    }
+
+    // Tiles that have been partly harvested
+    public void forEachPartial(Visitor v) {
+        harvested.forEachNonZero((i, h) -> {
+            int x = map.xOf(i), y = map.yOf(i);
+            v.visit(x, y, map.getType(x, y).getCapacity() - h);
+        });
+    }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) {
+        harvested.set(map.index(x, y), 0);
+    }
+}
@@ -0,0 +1,84 @@
+package map;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+
+// Bucketed grid of resource tiles per TileType, kept current as tiles are harvested or change type. A bucket's
+// 16x16 tiles are read from the terrain the first time a query reaches it, so paged maps only read what is asked.
+public class ResourceIndex implements MapListener {
+    private final GameMap map;
+    private final EnumMap<TileType, BucketGrid> grids = new EnumMap<>(TileType.class);
+    private final int cellsX;
+    private final int cellCount;
+    private final BitSet scanned = new BitSet();
+
+    ResourceIndex(GameMap map) {
+        this.map = map;
+        for (TileType t : TileType.values()) {
+            if (t.getResource() == null) continue;
+            BucketGrid g = new BucketGrid(map.getWidth(), map.getHeight());
+            g.setLoader(this::scan);
+            grids.put(t, g);
+        }
+        this.cellsX = (map.getWidth() + BucketGrid.CELL - 1) >> BucketGrid.CELL_SHIFT;
+        this.cellCount = cellsX * ((map.getHeight() + BucketGrid.CELL - 1) >> BucketGrid.CELL_SHIFT);
+    }
+
+    long estimateBytes() {
+        long bytes = cellCount / 8;
+        for (BucketGrid g : grids.values()) bytes += g.estimateBytes();
+        return bytes;
+    }
+
+    // Scans whatever hasn't been read yet
+    public int count(TileType type) {
+        BucketGrid g = grids.get(type);
+        if (g == null) return 0;
+        for (int c = scanned.nextClearBit(0); c < cellCount; c = scanned.nextClearBit(c + 1)) scan(c);
+        return g.size();
+    }
+
+    public List<Position> within(TileType type, Position p, int r) {
+        List<Position> out = new ArrayList<>();
+        BucketGrid g = grids.get(type);
+        if (g != null) g.forEachWithin(p.x, p.y, r, idx -> out.add(map.positionAt(idx)));
+        return out;
+    }
+
+    // Resource tiles of any type within radius r
+    public List<Position> within(Position p, int r) {
+        List<Position> out = new ArrayList<>();
+        for (BucketGrid g : grids.values()) g.forEachWithin(p.x, p.y, r, idx -> out.add(map.positionAt(idx)));
+        return out;
+    }
+
+    public List<Position> nearest(TileType type, Position p, int k) {
+        List<Position> out = new ArrayList<>();
+        BucketGrid g = grids.get(type);
+        if (g == null) return out;
+        for (int idx : g.nearestK(p.x, p.y, k, i -> true)) out.add(map.positionAt(idx));
+        return out;
+    }
+
+    private void scan(int cell) {
+        if (scanned.get(cell)) return;
+        scanned.set(cell);
+        int x0 = (cell % cellsX) << BucketGrid.CELL_SHIFT, y0 = (cell / cellsX) << BucketGrid.CELL_SHIFT;
+        map.forEachInRegion(x0, y0, x0 + BucketGrid.CELL, y0 + BucketGrid.CELL, (x, y, i) -> {
+            BucketGrid g = grids.get(map.getType(x, y));
+            if (g != null) g.add(i);
+        });
+    }
+
+    // Buckets not scanned yet pick the change up when they are
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) {
+        if (!scanned.get((y >> BucketGrid.CELL_SHIFT) * cellsX + (x >> BucketGrid.CELL_SHIFT))) return;
+        BucketGrid from = grids.get(before);
+        BucketGrid to = grids.get(after);
+        if (from != null) from.remove(map.index(x, y));
+        if (to != null) to.add(map.index(x, y));
+    }
+}
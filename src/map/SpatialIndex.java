@@ -0,0 +1,78 @@
+package map;
+
+import buildings.Building;
+import buildings.BuildingType;
+import player.Player;
+import units.Unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+// Grid index of occupied tiles, kept current as a GameMap listener whenever a unit or building enters or
+// leaves a tile. Buildings are indexed on every tile of their footprint so range queries see them like the
+// tile scan did.
+public class SpatialIndex implements MapListener {
+    private final GameMap map;
+    private final BucketGrid units;
+    private final BucketGrid buildings;
+
+    SpatialIndex(GameMap map) {
+        this.map = map;
+        this.units = new BucketGrid(map.getWidth(), map.getHeight());
+        this.buildings = new BucketGrid(map.getWidth(), map.getHeight());
+    }
+
+    @Override
+    public void unitChanged(int x, int y, Unit before, Unit after) {
+        if (before == null) units.add(map.index(x, y));
+        else if (after == null) units.remove(map.index(x, y));
+    }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) {
+        if (before == null) buildings.add(map.index(x, y));
+        else if (after == null) buildings.remove(map.index(x, y));
+    }
+
+    long estimateBytes() { return units.estimateBytes() + buildings.estimateBytes(); }
+
+    public int getUnitTileCount() { return units.size(); }
+    public int getBuildingTileCount() { return buildings.size(); }
+
+    // Every occupied tile (unit or building) within Manhattan radius r of (x, y), as flat indices
+    public void forEachOccupiedWithin(int x, int y, int r, IntConsumer visit) {
+        units.forEachWithin(x, y, r, visit);
+        buildings.forEachWithin(x, y, r, visit);
+    }
+
+    // Tiles within Manhattan radius r of p holding a unit or building not owned by owner
+    public List<Position> enemiesWithin(Player owner, Position p, int r) {
+        List<Position> out = new ArrayList<>();
+        units.forEachWithin(p.x, p.y, r, idx -> {
+            Unit u = map.getUnit(map.xOf(idx), map.yOf(idx));
+            if (u != null && u.getOwner() != owner) out.add(map.positionAt(idx));
+        });
+        buildings.forEachWithin(p.x, p.y, r, idx -> {
+            Building b = map.getBuilding(map.xOf(idx), map.yOf(idx));
+            if (b != null && b.getOwner() != owner) out.add(map.positionAt(idx));
+        });
+        return out;
+    }
+
+    // Closest enemy building of the given type, measured to its nearest footprint tile
+    public Building nearestEnemyBuilding(Player owner, Position p, BuildingType type) {
+        return nearestEnemyBuilding(owner, p, type, i -> true);
+    }
+
+    // The same, counting only footprint tiles that pass `known`
+    public Building nearestEnemyBuilding(Player owner, Position p, BuildingType type, IntPredicate known) {
+        int idx = buildings.nearest(p.x, p.y, i -> {
+            if (!known.test(i)) return false;
+            Building b = map.getBuilding(map.xOf(i), map.yOf(i));
+            return b != null && b.getOwner() != owner && b.getType() == type;
+        });
+        return idx < 0 ? null : map.getBuilding(map.xOf(idx), map.yOf(idx));
+    }
+}
@@ -0,0 +1,22 @@
+package map;
+
+// Top-left corners of both sides' starting castle and barracks
+public class StartLayout {
+    public final Position humanCastle;
+    public final Position humanBarracks;
+    public final Position enemyCastle;
+    public final Position enemyBarracks;
+
+    public StartLayout(Position humanCastle, Position humanBarracks, Position enemyCastle, Position enemyBarracks) {
+        this.humanCastle = humanCastle;
+        this.humanBarracks = humanBarracks;
+        this.enemyCastle = enemyCastle;
+        this.enemyBarracks = enemyBarracks;
+    }
+
+    // Classic layout: enemy in the top-left corner, human in the bottom-right, barracks facing the middle
+    public static StartLayout corners(GameMap map) {
+        int w = map.getWidth(), h = map.getHeight();
+        return new StartLayout(map.pos(w - 2, h - 2), map.pos(w - 4, h - 2), map.pos(0, 0), map.pos(2, 0));
+    }
+}
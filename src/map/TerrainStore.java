@@ -0,0 +1,13 @@
+package map;
+
+// Backing storage for the terrain layer of a GameMap; values are TileType ordinals
+public interface TerrainStore {
+    byte get(int x, int y);
+    void set(int x, int y, byte value);
+
+    // Whether different tiles may be read and written from several threads at once
+    default boolean isConcurrent() { return false; }
+
+    // Heap the store holds at most, for budgeting how many maps can be kept around
+    long residentBytes();
+}
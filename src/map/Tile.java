@@ -4,28 +4,28 @@ import buildings.Building;
 import player.Player;
 import units.Unit;
 
+// Lightweight view over one cell of a GameMap; all state lives in the map's layers.
 public class Tile {
-    private final Position pos;
-    private TileType type;
-    private Player owner;
-    private Building building;
-    private Unit unit;
+    private final GameMap map;
+    private final int x;
+    private final int y;
 
-    public Tile(Position pos, TileType type) {
-        this.pos = pos;
-        this.type = type;
+    Tile(GameMap map, int x, int y) {
+        this.map = map;
+        this.x = x;
+        this.y = y;
     }
 
-    public Position getPos() { return pos; }
-    public TileType getType() { return type; }
-    public void setType(TileType type) { this.type = type; }
+    public Position getPos() { return map.pos(x, y); }
+    public TileType getType() { return map.getType(x, y); }
+    public void setType(TileType type) { map.setType(x, y, type); }
 
-    public Player getOwner() { return owner; }
-    public void setOwner(Player owner) { this.owner = owner; }
+    public Player getOwner() { return map.getOwner(x, y); }
+    public void setOwner(Player owner) { map.setOwner(x, y, owner); }
 
-    public Building getBuilding() { return building; }
-    public void setBuilding(Building building) { this.building = building; }
+    public Building getBuilding() { return map.getBuilding(x, y); }
+    public void setBuilding(Building building) { map.setBuilding(x, y, building); }
 
-    public Unit getUnit() { return unit; }
-    public void setUnit(Unit unit) { this.unit = unit; }
+    public Unit getUnit() { return map.getUnit(x, y); }
+    public void setUnit(Unit unit) { map.setUnit(x, y, unit); }
 }
@@ -1,18 +1,51 @@
 package map;
 
+import resources.ResourceType;
+
 public enum TileType {
-    GRASS(true),
-    WATER(false),
-    MOUNTAIN(false),
-    FOREST(false);
+    GRASS(true, 2, null, 0, 0),
+    WATER(false, 0, ResourceType.FOOD, 60, 10),
+    MOUNTAIN(false, 0, ResourceType.STONE, 90, 0),
+    FOREST(false, 4, ResourceType.WOOD, 60, 20),
+    // Appended so the ordinals stored in saved and raw maps keep their meaning
+    ROAD(true, 1, null, 0, 0);
 
     private final boolean accessible;
+    private final int moveCost;
+    private final ResourceType resource;
+    private final int capacity;
+    private final int regrowTurns;
 
-    TileType(boolean accessible) {
+    TileType(boolean accessible, int moveCost, ResourceType resource, int capacity, int regrowTurns) {
         this.accessible = accessible;
+        this.moveCost = moveCost;
+        this.resource = resource;
+        this.capacity = capacity;
+        this.regrowTurns = regrowTurns;
     }
 
     public boolean isAccessible() {
         return accessible;
     }
+
+    // Movement points to step onto the tile, 0 where nothing walks; grass costs 2 so a road can be twice as fast.
+    // Forest has a cost but isn't accessible: only units that go through woods may enter it (UnitType.canEnter).
+    public int getMoveCost() {
+        return moveCost;
+    }
+
+    // What collecting this tile yields, or null if it can't be collected
+    public ResourceType getResource() {
+        return resource;
+    }
+
+    // Total amount a fresh tile yields before it is used up
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Turns until a depleted tile grows back, 0 if it never does
+    public int getRegrowTurns() {
+        return regrowTurns;
+    }
 }
@@ -0,0 +1,121 @@
+package map.generator;
+
+import map.GameMap;
+import map.TerrainStore;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+// Terrain from an image: each pixel becomes the tile type whose palette colour is nearest in RGB, so anti-aliased
+// or slightly off colours still land somewhere sensible. Non-interlaced PNGs are decoded a row at a time by
+// PngRowReader; anything else goes through ImageIO in strips of rows (ImageIO's own PNG reader re-inflates the
+// image from the top for every strip, which is why PNG doesn't use it).
+public class ImageMapImporter extends MapImporter {
+    // Indexed by TileType ordinal
+    public static final int[] DEFAULT_PALETTE = {
+            0x4CAF50, // GRASS
+            0x2196F3, // WATER
+            0x808080, // MOUNTAIN
+            0x1B5E20, // FOREST
+            0xC8A165, // ROAD
+    };
+    private static final int STRIP_PIXELS = 1 << 22;
+
+    private final Path file;
+    private final int[] palette;
+
+    public ImageMapImporter(Path file, long pagedTiles) {
+        this(file, DEFAULT_PALETTE, pagedTiles);
+    }
+
+    public ImageMapImporter(Path file, int[] palette, long pagedTiles) {
+        super(pagedTiles);
+        if (palette.length != TYPE_COUNT) throw new IllegalArgumentException("Palette needs one colour per tile type");
+        this.file = file;
+        this.palette = palette.clone();
+    }
+
+    @Override
+    protected GameMap load() {
+        try {
+            PngRowReader png = PngRowReader.open(file);
+            if (png == null) return loadWithImageIO();
+            try (png) {
+                int w = png.getWidth(), h = png.getHeight();
+                TerrainStore store = newStore(w, h);
+                int[] rgb = new int[w];
+                for (int y = 0; y < h; y++) {
+                    png.readRow(rgb);
+                    writeRow(store, y, rgb, w);
+                }
+                return new GameMap(w, h, store);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not import map " + file, e);
+        }
+    }
+
+    private GameMap loadWithImageIO() throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) throw new IOException("Unsupported image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int w = reader.getWidth(0), h = reader.getHeight(0);
+                TerrainStore store = newStore(w, h);
+                int strip = Math.max(1, STRIP_PIXELS / w);
+                int[] rgb = new int[w];
+                ImageReadParam param = reader.getDefaultReadParam();
+                for (int y0 = 0; y0 < h; y0 += strip) {
+                    int rows = Math.min(strip, h - y0);
+                    param.setSourceRegion(new Rectangle(0, y0, w, rows));
+                    BufferedImage img = reader.read(0, param);
+                    for (int r = 0; r < rows; r++) {
+                        img.getRGB(0, r, w, 1, rgb, 0, w);
+                        writeRow(store, y0 + r, rgb, w);
+                    }
+                }
+                return new GameMap(w, h, store);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Runs of one colour are the common case, so the last match is remembered
+    private void writeRow(TerrainStore store, int y, int[] rgb, int w) {
+        int lastRgb = -1;
+        byte last = 0;
+        for (int x = 0; x < w; x++) {
+            int c = rgb[x] & 0xFFFFFF;
+            if (c != lastRgb) {
+                lastRgb = c;
+                last = nearest(c);
+            }
+            store.set(x, y, last);
+        }
+    }
+
+    private byte nearest(int c) {
+        int r = c >>> 16, g = (c >>> 8) & 0xFF, b = c & 0xFF;
+        int best = 0, bestDist = Integer.MAX_VALUE;
+        for (int k = 0; k < palette.length; k++) {
+            int dr = r - (palette[k] >>> 16), dg = g - ((palette[k] >>> 8) & 0xFF), db = b - (palette[k] & 0xFF);
+            int d = dr * dr + dg * dg + db * db;
+            if (d < bestDist) {
+                bestDist = d;
+                best = k;
+            }
+        }
+        return (byte) best;
+    }
+}
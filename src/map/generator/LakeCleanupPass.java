@@ -0,0 +1,60 @@
+package map.generator;
+
+import map.TileType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Water bodies smaller than minSize tiles (4-connected) are filled in with grass.
+public class LakeCleanupPass implements MapPass {
+    private static final byte WATER = (byte) TileType.WATER.ordinal();
+    private static final byte GRASS = (byte) TileType.GRASS.ordinal();
+
+    private final int minSize;
+    private BitSet fill;
+
+    public LakeCleanupPass(int minSize) {
+        this.minSize = minSize;
+    }
+
+    @Override
+    public void prepare(byte[] src, int w, int h) {
+        fill = new BitSet(w * h);
+        BitSet seen = new BitSet(w * h);
+        int[] queue = new int[256];
+
+        for (int start = 0; start < src.length; start++) {
+            if (src[start] != WATER || seen.get(start)) continue;
+            // The queue doubles as the component's tile list
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            seen.set(start);
+            while (head < tail) {
+                int cur = queue[head++];
+                int cx = cur % w, cy = cur / w;
+                if (tail + 4 > queue.length) queue = Arrays.copyOf(queue, queue.length * 2);
+                if (cx > 0) tail = visit(src, seen, queue, tail, cur - 1);
+                if (cx + 1 < w) tail = visit(src, seen, queue, tail, cur + 1);
+                if (cy > 0) tail = visit(src, seen, queue, tail, cur - w);
+                if (cy + 1 < h) tail = visit(src, seen, queue, tail, cur + w);
+            }
+            if (tail < minSize) {
+                for (int k = 0; k < tail; k++) fill.set(queue[k]);
+            }
+        }
+    }
+
+    private static int visit(byte[] src, BitSet seen, int[] queue, int tail, int i) {
+        if (src[i] != WATER || seen.get(i)) return tail;
+        seen.set(i);
+        queue[tail] = i;
+        return tail + 1;
+    }
+
+    @Override
+    public void apply(byte[] src, byte[] dst, int w, int h, int y0, int y1) {
+        for (int i = y0 * w, end = y1 * w; i < end; i++) {
+            dst[i] = fill.get(i) ? GRASS : src[i];
+        }
+    }
+}
@@ -2,6 +2,13 @@ package map.generator;
 
 import map.GameMap;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface MapGenerator {
     GameMap generate();
+
+    // For callers that must not block, such as the UI thread; runs generate() on the common pool unless overridden
+    default CompletableFuture<GameMap> generateAsync() {
+        return CompletableFuture.supplyAsync(this::generate);
+    }
 }
@@ -0,0 +1,56 @@
+package map.generator;
+
+import map.ArrayTerrainStore;
+import map.GameMap;
+import map.ImportReport;
+import map.PagedTerrainStore;
+import map.TerrainStore;
+import map.TileType;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+// Base for generators that load terrain from a file. Each load is timed and the heap peak during it is sampled
+// from the JVM's memory pools into an ImportReport kept on the map itself, so a pooled map reports its own load
+// however many imports ran since. The peak is taken over what was in use when the load started
+// and summed per pool, so it is an upper bound that includes garbage not yet collected.
+public abstract class MapImporter implements MapGenerator {
+    protected static final int TYPE_COUNT = TileType.values().length;
+    private static final int RESIDENT_CHUNKS = 1024;
+
+    // Maps with more tiles than this are written into a paged store instead of a heap array
+    protected final long pagedTiles;
+
+    protected MapImporter(long pagedTiles) {
+        this.pagedTiles = pagedTiles;
+    }
+
+    @Override
+    public final GameMap generate() {
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        long before = 0;
+        for (MemoryPoolMXBean p : pools) {
+            if (p.getType() != MemoryType.HEAP) continue;
+            before += p.getUsage().getUsed();
+            p.resetPeakUsage();
+        }
+        long t0 = System.nanoTime();
+        GameMap map = load();
+        long millis = (System.nanoTime() - t0) / 1_000_000;
+        long peak = 0;
+        for (MemoryPoolMXBean p : pools) {
+            if (p.getType() == MemoryType.HEAP) peak += p.getPeakUsage().getUsed();
+        }
+        map.setImportReport(new ImportReport(map.getWidth(), map.getHeight(), millis, Math.max(0, peak - before)));
+        return map;
+    }
+
+    protected abstract GameMap load();
+
+    protected TerrainStore newStore(int w, int h) {
+        if ((long) w * h > pagedTiles) return new PagedTerrainStore(w, h, RESIDENT_CHUNKS, null);
+        return new ArrayTerrainStore(w, h);
+    }
+}
@@ -0,0 +1,11 @@
+package map.generator;
+
+// One post-processing step over packed terrain (tile ordinals, row-major, y * w + x). Passes are run
+// double-buffered: src is the previous result and stays read-only while rows are written to dst.
+public interface MapPass {
+    // Serial analysis of the whole grid before rows are written (component labelling, path tracing, ...)
+    default void prepare(byte[] src, int w, int h) {}
+
+    // Writes every tile of rows [y0, y1) into dst; called concurrently for disjoint row bands
+    void apply(byte[] src, byte[] dst, int w, int h, int y0, int y1);
+}
@@ -0,0 +1,58 @@
+package map.generator;
+
+import map.GameMap;
+import map.TileType;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Runs a base generator, then a chain of MapPasses over two packed terrain buffers that are swapped after
+// each pass. Each pass is split into row bands on the fork-join pool; only tiles that differ from the base
+// map are written back, so listeners see the net change once. Meant for dense maps: the buffers hold
+// the whole map.
+public class MapPipeline implements MapGenerator {
+    private static final TileType[] TYPES = TileType.values();
+    private static final int BAND_ROWS = 64;
+
+    private final MapGenerator base;
+    private final List<MapPass> passes;
+
+    public MapPipeline(MapGenerator base, MapPass... passes) {
+        this.base = base;
+        this.passes = List.of(passes);
+    }
+
+    @Override
+    public GameMap generate() {
+        GameMap map = base.generate();
+        apply(map, passes);
+        return map;
+    }
+
+    public static void apply(GameMap map, List<MapPass> passes) {
+        if (passes.isEmpty()) return;
+        int w = map.getWidth(), h = map.getHeight();
+        byte[] initial = new byte[w * h];
+        map.parallelForEachRow(y -> {
+            for (int x = 0; x < w; x++) initial[y * w + x] = (byte) map.getType(x, y).ordinal();
+        });
+
+        byte[] src = initial;
+        byte[] dst = new byte[w * h];
+
+        int bands = (h + BAND_ROWS - 1) / BAND_ROWS;
+        for (MapPass pass : passes) {
+            pass.prepare(src, w, h);
+            byte[] in = src, out = dst;
+            IntStream.range(0, bands).parallel().forEach(b -> {
+                int y0 = b * BAND_ROWS;
+                pass.apply(in, out, w, h, y0, Math.min(h, y0 + BAND_ROWS));
+            });
+            dst = src;
+            src = out;
+        }
+
+        byte[] result = src;
+        map.parallelMapTerrain((x, y, current) -> TYPES[result[y * w + x]]);
+    }
+}
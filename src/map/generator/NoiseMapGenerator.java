@@ -0,0 +1,195 @@
+package map.generator;
+
+import map.GameMap;
+import map.PagedTerrainStore;
+import map.TileType;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Fractal gradient noise: an elevation field picks water and mountain bands, a second moisture field
+// decides forest on the land in between. Terrain is produced one row (or row segment) at a time into
+// small per-thread float buffers, so no full-map intermediate grid is ever allocated.
+public class NoiseMapGenerator implements MapGenerator {
+    public interface RowSink {
+        // row holds the tile ordinals of row y; the buffer is reused for the next row
+        void row(int y, byte[] row);
+    }
+
+    private static final int RESIDENT_CHUNKS = 1024;
+    private static final int OCTAVES = 5;
+    // Moisture only needs broad patches, so it stops after fewer octaves
+    private static final int MOISTURE_OCTAVES = 3;
+    private static final float BASE_FREQUENCY = 1f / 48f;
+    private static final long MOISTURE_SALT = 0x5DEECE66DL;
+
+    private static final float WATER_BELOW = -0.15f;
+    private static final float MOUNTAIN_ABOVE = 0.17f;
+    private static final float FOREST_ABOVE = 0.12f;
+
+    // 8 unit-ish gradient directions
+    private static final float[] GX = {1, -1, 1, -1, 0.7071f, -0.7071f, 0.7071f, -0.7071f};
+    private static final float[] GY = {0, 0, 1, -1, 0.7071f, 0.7071f, -0.7071f, -0.7071f};
+
+    private static final class RowBuffer {
+        int y = -1;
+        float[] elevation = new float[0];
+        float[] moisture = new float[0];
+        byte[] tiles = new byte[0];
+
+        void ensure(int n) {
+            if (elevation.length >= n) return;
+            elevation = new float[n];
+            moisture = new float[n];
+            tiles = new byte[n];
+        }
+    }
+
+    private final int w;
+    private final int h;
+    private final boolean paged;
+    private final long seed;
+    private final float amplitudeSum;
+    private final float moistureAmplitudeSum;
+    private final ThreadLocal<RowBuffer> rows = ThreadLocal.withInitial(RowBuffer::new);
+
+    public NoiseMapGenerator(int w, int h) {
+        this(w, h, false);
+    }
+
+    public NoiseMapGenerator(int w, int h, boolean paged) {
+        this(w, h, paged, new SplittableRandom().nextLong());
+    }
+
+    public NoiseMapGenerator(int w, int h, boolean paged, long seed) {
+        this.w = w;
+        this.h = h;
+        this.paged = paged;
+        this.seed = seed;
+        this.amplitudeSum = amplitudeSum(OCTAVES);
+        this.moistureAmplitudeSum = amplitudeSum(MOISTURE_OCTAVES);
+    }
+
+    private static float amplitudeSum(int octaves) {
+        float sum = 0, amp = 1;
+        for (int o = 0; o < octaves; o++) {
+            sum += amp;
+            amp *= 0.5f;
+        }
+        return sum;
+    }
+
+    public long getSeed() { return seed; }
+
+    @Override
+    public GameMap generate() {
+        if (paged) return new GameMap(w, h, new PagedTerrainStore(w, h, RESIDENT_CHUNKS, this::fillChunk));
+
+        GameMap map = new GameMap(w, h);
+        // Rows are visited left to right on one thread, so each row is computed once into the thread's buffer
+        TileType[] types = TileType.values();
+        map.parallelMapTerrain((x, y, current) -> {
+            RowBuffer b = rows.get();
+            if (b.y != y) {
+                fillRow(y, 0, w, b);
+                b.y = y;
+            }
+            return types[b.tiles[x]];
+        });
+        rows.remove();
+        return map;
+    }
+
+    // Streams the whole map row by row with O(width) memory, for exporting maps too large to hold
+    public void streamRows(RowSink sink) {
+        RowBuffer b = new RowBuffer();
+        byte[] out = new byte[w];
+        for (int y = 0; y < h; y++) {
+            fillRow(y, 0, w, b);
+            System.arraycopy(b.tiles, 0, out, 0, w);
+            sink.row(y, out);
+        }
+    }
+
+    private void fillChunk(int x0, int y0, int cw, int ch, byte[] out) {
+        RowBuffer b = rows.get();
+        for (int y = 0; y < ch; y++) {
+            fillRow(y0 + y, x0, cw, b);
+            System.arraycopy(b.tiles, 0, out, y * PagedTerrainStore.CHUNK_SIZE, cw);
+        }
+        b.y = -1;
+    }
+
+    // Tiles x0 .. x0 + n - 1 of row y into b.tiles[0 .. n)
+    private void fillRow(int y, int x0, int n, RowBuffer b) {
+        b.ensure(n);
+        float[] e = b.elevation, m = b.moisture;
+        Arrays.fill(e, 0, n, 0f);
+        Arrays.fill(m, 0, n, 0f);
+
+        float freq = BASE_FREQUENCY, amp = 1f;
+        for (int o = 0; o < OCTAVES; o++) {
+            accumulate(e, y, x0, n, freq, amp, seed + o);
+            if (o < MOISTURE_OCTAVES) accumulate(m, y, x0, n, freq, amp, (seed ^ MOISTURE_SALT) + o);
+            freq *= 2f;
+            amp *= 0.5f;
+        }
+
+        float inv = 1f / amplitudeSum, invMoisture = 1f / moistureAmplitudeSum;
+        byte water = (byte) TileType.WATER.ordinal(), mountain = (byte) TileType.MOUNTAIN.ordinal();
+        byte forest = (byte) TileType.FOREST.ordinal(), grass = (byte) TileType.GRASS.ordinal();
+        byte[] t = b.tiles;
+        for (int i = 0; i < n; i++) {
+            float el = e[i] * inv;
+            if (el < WATER_BELOW) t[i] = water;
+            else if (el > MOUNTAIN_ABOVE) t[i] = mountain;
+            else t[i] = m[i] * invMoisture > FOREST_ABOVE ? forest : grass;
+        }
+    }
+
+    // One octave of 2D gradient noise along a row segment, added into acc with weight amp. The row is walked
+    // one lattice cell at a time so the per-tile loop has no branches and the corner terms are hoisted.
+    private static void accumulate(float[] acc, int y, int x0, int n, float freq, float amp, long octaveSeed) {
+        // Coordinates are never negative, so truncation is floor
+        float fy = y * freq;
+        int yi = (int) fy;
+        float ty = fy - yi, ty1 = ty - 1f;
+        float v = fade(ty);
+
+        int i = 0;
+        while (i < n) {
+            int xi = (int) ((x0 + i) * freq);
+            int end = Math.min(n, (int) ((xi + 1) / freq) - x0);
+            while (end < n && (int) ((x0 + end) * freq) <= xi) end++;
+            while (end > i + 1 && (int) ((x0 + end - 1) * freq) > xi) end--;
+
+            int h00 = hash(octaveSeed, xi, yi), h10 = hash(octaveSeed, xi + 1, yi);
+            int h01 = hash(octaveSeed, xi, yi + 1), h11 = hash(octaveSeed, xi + 1, yi + 1);
+            float g00x = GX[h00], g10x = GX[h10], g01x = GX[h01], g11x = GX[h11];
+            float b00 = GY[h00] * ty, b10 = GY[h10] * ty, b01 = GY[h01] * ty1, b11 = GY[h11] * ty1;
+
+            for (; i < end; i++) {
+                float tx = (x0 + i) * freq - xi, tx1 = tx - 1f;
+                float n00 = g00x * tx + b00;
+                float n10 = g10x * tx1 + b10;
+                float n01 = g01x * tx + b01;
+                float n11 = g11x * tx1 + b11;
+                float u = tx * tx * tx * (tx * (tx * 6f - 15f) + 10f);
+                float a = n00 + u * (n10 - n00);
+                float c = n01 + u * (n11 - n01);
+                acc[i] += amp * (a + v * (c - a));
+            }
+        }
+    }
+
+    private static float fade(float t) {
+        return t * t * t * (t * (t * 6f - 15f) + 10f);
+    }
+
+    private static int hash(long seed, int x, int y) {
+        long z = seed ^ (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) ((z ^ (z >>> 31)) & 7);
+    }
+}
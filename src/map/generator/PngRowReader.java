@@ -0,0 +1,224 @@
+package map.generator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Minimal sequential PNG decoder: inflates the IDAT stream and unfilters one row at a time, keeping only the
+// previous row, so memory stays at two rows whatever the image size. Handles non-interlaced greyscale, RGB,
+// palette and alpha images at the usual bit depths; open() returns null for anything else.
+final class PngRowReader implements Closeable {
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int IHDR = 0x49484452, PLTE = 0x504C5445, IDAT = 0x49444154, IEND = 0x49454E44;
+
+    private final DataInputStream file;
+    private final int width;
+    private final int height;
+    private final int colorType;
+    private final int bitDepth;
+    private final int bytesPerPixel;
+    private final int[] palette;
+    private final Inflater inflater = new Inflater();
+    private final InputStream pixels;
+    private byte[] row;
+    private byte[] prev;
+
+    private PngRowReader(DataInputStream file, int width, int height, int colorType, int bitDepth, int[] palette,
+                         int idatLength) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.colorType = colorType;
+        this.bitDepth = bitDepth;
+        this.palette = palette;
+        int bitsPerPixel = channels(colorType) * bitDepth;
+        this.bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        int rowBytes = (int) (((long) width * bitsPerPixel + 7) / 8);
+        this.row = new byte[rowBytes];
+        this.prev = new byte[rowBytes];
+        this.pixels = new InflaterInputStream(new IdatStream(idatLength), inflater, 1 << 16);
+    }
+
+    static PngRowReader open(Path path) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        try {
+            if (in.readLong() != SIGNATURE || in.readInt() != 13 || in.readInt() != IHDR) {
+                in.close();
+                return null;
+            }
+            int w = in.readInt(), h = in.readInt();
+            int depth = in.readUnsignedByte(), type = in.readUnsignedByte();
+            skipFully(in, 2);
+            int interlace = in.readUnsignedByte();
+            skipFully(in, 4);
+            if (interlace != 0 || channels(type) == 0 || !supported(type, depth)) {
+                in.close();
+                return null;
+            }
+            int[] palette = null;
+            while (true) {
+                int len = in.readInt(), chunk = in.readInt();
+                if (chunk == IDAT) return new PngRowReader(in, w, h, type, depth, palette, len);
+                if (chunk == IEND) throw new EOFException("PNG has no image data");
+                if (chunk == PLTE) {
+                    palette = new int[len / 3];
+                    for (int k = 0; k < palette.length; k++) {
+                        palette[k] = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+                    }
+                    skipFully(in, len - palette.length * 3 + 4L);
+                } else {
+                    skipFully(in, len + 4L);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static int channels(int colorType) {
+        return switch (colorType) {
+            case 0, 3 -> 1;
+            case 4 -> 2;
+            case 2 -> 3;
+            case 6 -> 4;
+            default -> 0;
+        };
+    }
+
+    private static boolean supported(int colorType, int depth) {
+        if (colorType == 0 || colorType == 3) return depth == 1 || depth == 2 || depth == 4 || depth == 8 || (colorType == 0 && depth == 16);
+        return depth == 8 || depth == 16;
+    }
+
+    private static void skipFully(DataInputStream in, long n) throws IOException {
+        while (n > 0) {
+            long k = in.skip(n);
+            if (k <= 0) {
+                in.readByte();
+                k = 1;
+            }
+            n -= k;
+        }
+    }
+
+    int getWidth() { return width; }
+    int getHeight() { return height; }
+
+    // Decodes the next row as 0xRRGGBB values; alpha is dropped
+    void readRow(int[] rgb) throws IOException {
+        byte[] t = prev;
+        prev = row;
+        row = t;
+        int filter = pixels.read();
+        if (filter < 0) throw new EOFException("PNG image data ends early");
+        readFully(row);
+        unfilter(filter);
+
+        int bpp = bytesPerPixel;
+        for (int x = 0; x < width; x++) {
+            rgb[x] = switch (colorType) {
+                case 0 -> grey(sample(x)) * 0x010101;
+                case 3 -> palette[Math.min(sample(x), palette.length - 1)];
+                case 4 -> (row[x * bpp] & 0xFF) * 0x010101;
+                default -> {
+                    int c = bitDepth / 8, i = x * bpp;
+                    yield ((row[i] & 0xFF) << 16) | ((row[i + c] & 0xFF) << 8) | (row[i + 2 * c] & 0xFF);
+                }
+            };
+        }
+    }
+
+    // Raw sample of a one-channel pixel; 16-bit samples keep their high byte
+    private int sample(int x) {
+        if (bitDepth >= 8) return row[x * (bitDepth / 8)] & 0xFF;
+        int perByte = 8 / bitDepth;
+        int shift = 8 - bitDepth * (x % perByte + 1);
+        return ((row[x / perByte] & 0xFF) >>> shift) & ((1 << bitDepth) - 1);
+    }
+
+    private int grey(int v) {
+        return bitDepth >= 8 ? v : v * 255 / ((1 << bitDepth) - 1);
+    }
+
+    private void readFully(byte[] b) throws IOException {
+        int off = 0;
+        while (off < b.length) {
+            int n = pixels.read(b, off, b.length - off);
+            if (n < 0) throw new EOFException("PNG image data ends early");
+            off += n;
+        }
+    }
+
+    private void unfilter(int filter) throws IOException {
+        byte[] r = row, p = prev;
+        int bpp = bytesPerPixel, n = r.length;
+        switch (filter) {
+            case 0 -> { }
+            case 1 -> { for (int i = bpp; i < n; i++) r[i] += r[i - bpp]; }
+            case 2 -> { for (int i = 0; i < n; i++) r[i] += p[i]; }
+            case 3 -> {
+                for (int i = 0; i < n; i++) {
+                    int left = i >= bpp ? r[i - bpp] & 0xFF : 0;
+                    r[i] += (byte) ((left + (p[i] & 0xFF)) >>> 1);
+                }
+            }
+            case 4 -> {
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? r[i - bpp] & 0xFF : 0, b = p[i] & 0xFF, c = i >= bpp ? p[i - bpp] & 0xFF : 0;
+                    int pa = Math.abs(b - c), pb = Math.abs(a - c), pc = Math.abs(a + b - 2 * c);
+                    r[i] += (byte) (pa <= pb && pa <= pc ? a : pb <= pc ? b : c);
+                }
+            }
+            default -> throw new IOException("Bad PNG filter type " + filter);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+
+    // The payload of consecutive IDAT chunks as one stream; CRCs are skipped, not checked
+    private final class IdatStream extends InputStream {
+        private int left;
+
+        IdatStream(int first) {
+            this.left = first;
+        }
+
+        // Moves on to the next IDAT chunk once this one is used up; left is -1 after the last one
+        private boolean next() throws IOException {
+            while (left == 0) {
+                skipFully(file, 4);
+                int len = file.readInt(), chunk = file.readInt();
+                left = chunk == IDAT ? len : -1;
+            }
+            return left > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!next()) return -1;
+            left--;
+            return file.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!next()) return -1;
+            int n = file.read(b, off, Math.min(len, left));
+            if (n < 0) throw new EOFException("PNG truncated");
+            left -= n;
+            return n;
+        }
+    }
+}
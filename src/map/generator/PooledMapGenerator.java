@@ -0,0 +1,136 @@
+package map.generator;
+
+import map.GameMap;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+
+// Keeps up to `capacity` maps from the source ready, produced on one low-priority daemon thread, so taking a
+// map never waits for generation while the pool has one. The pool is topped up again after every take and never
+// holds more than maxBytes worth of maps, as measured by the sizer. A take from an empty pool is handed the next
+// map the worker finishes; nothing is ever generated on the caller's thread.
+public class PooledMapGenerator implements MapGenerator {
+    private final MapGenerator source;
+    private final int capacity;
+    private final long maxBytes;
+    private final ToLongFunction<GameMap> sizer;
+    private final ExecutorService worker;
+
+    // Guarded by this
+    private final ArrayDeque<GameMap> ready = new ArrayDeque<>();
+    private final ArrayDeque<CompletableFuture<GameMap>> waiting = new ArrayDeque<>();
+    private long pooledBytes;
+    private long lastBytes;
+    private boolean refilling;
+
+    public PooledMapGenerator(MapGenerator source, int capacity, long maxBytes) {
+        this(source, capacity, maxBytes, GameMap::estimateBytes);
+    }
+
+    public PooledMapGenerator(MapGenerator source, int capacity, long maxBytes, ToLongFunction<GameMap> sizer) {
+        this.source = source;
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        this.sizer = sizer;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "map-pool");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        refill();
+    }
+
+    // Blocks until a map is there; UI code should use generateAsync
+    @Override
+    public GameMap generate() {
+        return generateAsync().join();
+    }
+
+    // Completes at once with a pooled map, otherwise with the next one the worker finishes
+    @Override
+    public CompletableFuture<GameMap> generateAsync() {
+        CompletableFuture<GameMap> result = new CompletableFuture<>();
+        synchronized (this) {
+            GameMap map = ready.poll();
+            if (map == null) {
+                waiting.add(result);
+            } else {
+                pooledBytes -= sizer.applyAsLong(map);
+                result.complete(map);
+            }
+            refill();
+        }
+        return result;
+    }
+
+    public synchronized int getReady() { return ready.size(); }
+
+    public void shutdown() {
+        worker.shutdownNow();
+        synchronized (this) {
+            ready.clear();
+            for (CompletableFuture<GameMap> f : waiting) f.cancel(false);
+            waiting.clear();
+        }
+    }
+
+    private synchronized void refill() {
+        if (refilling || !hasWork()) return;
+        refilling = true;
+        worker.execute(this::fill);
+    }
+
+    // The size of the previous map stands in for the next one, so a budget too small for a map stops refilling
+    // before it is generated instead of after
+    private synchronized boolean hasWork() {
+        return !waiting.isEmpty() || (ready.size() < capacity && pooledBytes + lastBytes <= maxBytes);
+    }
+
+    // Waiting takes are served first; the pool only keeps what nobody is waiting for
+    private void fill() {
+        while (true) {
+            synchronized (this) {
+                if (Thread.currentThread().isInterrupted() || !hasWork()) {
+                    refilling = false;
+                    return;
+                }
+            }
+            GameMap map;
+            try {
+                map = source.generate();
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            long bytes = sizer.applyAsLong(map);
+            CompletableFuture<GameMap> taker;
+            synchronized (this) {
+                lastBytes = bytes;
+                taker = waiting.poll();
+                if (taker == null) {
+                    if (pooledBytes + bytes > maxBytes) {
+                        refilling = false;
+                        return;
+                    }
+                    pooledBytes += bytes;
+                    ready.add(map);
+                }
+            }
+            if (taker != null) taker.complete(map);
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        CompletableFuture<?>[] takers;
+        synchronized (this) {
+            takers = waiting.toArray(new CompletableFuture<?>[0]);
+            waiting.clear();
+            refilling = false;
+        }
+        for (CompletableFuture<?> f : takers) f.completeExceptionally(e);
+    }
+}
@@ -1,38 +1,69 @@
 package map.generator;
 
 import map.GameMap;
-import map.Position;
-import map.Tile;
+import map.PagedTerrainStore;
 import map.TileType;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
+// Every tile is rolled from a counter-based hash of (seed, tile index), so a seed reproduces the same map
+// no matter how rows or chunks are split across threads, and paged chunks match the dense layout exactly.
 public class ProceduralMapGenerator implements MapGenerator {
+    private static final int RESIDENT_CHUNKS = 1024;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
     private final int w;
     private final int h;
-    private final Random rng = new Random();
+    private final boolean paged;
+    private final long seed;
 
     public ProceduralMapGenerator(int w, int h) {
+        this(w, h, false);
+    }
+
+    // Paged maps are backed by a memory-mapped chunk file and only roll a chunk the first time it is touched
+    public ProceduralMapGenerator(int w, int h, boolean paged) {
+        this(w, h, paged, new SplittableRandom().nextLong());
+    }
+
+    public ProceduralMapGenerator(int w, int h, boolean paged, long seed) {
         this.w = w;
         this.h = h;
+        this.paged = paged;
+        this.seed = seed;
     }
 
+    public long getSeed() { return seed; }
+
     @Override
     public GameMap generate() {
+        if (paged) return new GameMap(w, h, new PagedTerrainStore(w, h, RESIDENT_CHUNKS, this::fillChunk));
+
         GameMap map = new GameMap(w, h);
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                map.setTile(x, y, new Tile(new Position(x, y), rollType()));
+        map.parallelMapTerrain((x, y, current) -> rollType(x, y));
+        return map;
+    }
+
+    private void fillChunk(int x0, int y0, int cw, int ch, byte[] out) {
+        for (int y = 0; y < ch; y++) {
+            for (int x = 0; x < cw; x++) {
+                out[y * PagedTerrainStore.CHUNK_SIZE + x] = (byte) rollType(x0 + x, y0 + y).ordinal();
             }
         }
-        return map;
     }
 
-    private TileType rollType() {
-        int r = rng.nextInt(100);
+    private TileType rollType(int x, int y) {
+        int r = (int) ((mix(seed + ((long) y * w + x + 1) * GOLDEN_GAMMA) >>> 1) % 100);
         if (r < 65) return TileType.GRASS;
         if (r < 80) return TileType.FOREST;
         if (r < 92) return TileType.WATER;
         return TileType.MOUNTAIN;
     }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
 }
@@ -0,0 +1,41 @@
+package map.generator;
+
+import map.ArrayTerrainStore;
+import map.GameMap;
+import map.MappedTerrainStore;
+import map.TerrainStore;
+
+import java.nio.file.Path;
+
+// Terrain from a headerless raw file: one TileType ordinal per byte, row-major, width x height bytes. The file
+// is memory-mapped; maps up to pagedTiles are copied into a heap array, larger ones play straight off the mapping.
+// Every byte is checked on load, which also pages the file in.
+public class RawMapImporter extends MapImporter {
+    private final Path file;
+    private final int width;
+    private final int height;
+
+    public RawMapImporter(Path file, int width, int height, long pagedTiles) {
+        super(pagedTiles);
+        this.file = file;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    protected GameMap load() {
+        MappedTerrainStore mapped = new MappedTerrainStore(file, width, height);
+        TerrainStore store = (long) width * height > pagedTiles ? mapped : new ArrayTerrainStore(width, height);
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            mapped.getRow(y, 0, row, width);
+            for (int x = 0; x < width; x++) {
+                if ((row[x] & 0xFF) >= TYPE_COUNT) {
+                    throw new IllegalArgumentException(file + ": byte " + row[x] + " at " + x + "," + y + " is not a tile type");
+                }
+                if (store != mapped) store.set(x, y, row[x]);
+            }
+        }
+        return new GameMap(width, height, store);
+    }
+}
@@ -0,0 +1,213 @@
+package map.generator;
+
+import map.TileType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+// Carves seeded, meandering rivers of water from inland high ground (mountains when available) towards the
+// nearest map edge, stopping early when they run into existing water. Every fordSpacing tiles a grass ford is
+// laid across the river's whole width. Meanders can fold a river into strands those fords don't cross, so the
+// land is checked afterwards: wherever a river crossing of at most MAX_FORD tiles would join two pieces of land
+// that are not connected, it becomes a ford too. Only pockets no crossing that short reaches stay cut off.
+public class RiverPass implements MapPass {
+    private static final byte WATER = (byte) TileType.WATER.ordinal();
+    private static final byte MOUNTAIN = (byte) TileType.MOUNTAIN.ordinal();
+    private static final byte GRASS = (byte) TileType.GRASS.ordinal();
+    private static final TileType[] TYPES = TileType.values();
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+    private static final int MAX_FORD = 10;
+    private static final int SPAN = 2 * MAX_FORD + 1;
+
+    private final int rivers;
+    private final int fordSpacing;
+    private final long seed;
+    private BitSet water;
+    private BitSet fords;
+
+    // Bounded crossing search, in coordinates local to a SPAN x SPAN window around its start
+    private final int[] seen = new int[SPAN * SPAN];
+    private final int[] from = new int[SPAN * SPAN];
+    private final int[] depth = new int[SPAN * SPAN];
+    private final int[] queue = new int[SPAN * SPAN];
+    private int generation;
+
+    public RiverPass(int rivers, long seed) {
+        this(rivers, 10, seed);
+    }
+
+    public RiverPass(int rivers, int fordSpacing, long seed) {
+        this.rivers = rivers;
+        this.fordSpacing = fordSpacing;
+        this.seed = seed;
+    }
+
+    @Override
+    public void prepare(byte[] src, int w, int h) {
+        water = new BitSet(w * h);
+        fords = new BitSet(w * h);
+        SplittableRandom rng = new SplittableRandom(seed);
+        int[] anchors = new int[16];
+        int anchorCount = 0;
+
+        for (int r = 0; r < rivers; r++) {
+            // Sources come from the middle half of the map so rivers have some length to them
+            int x = 0, y = 0;
+            for (int attempt = 0; attempt < 32; attempt++) {
+                x = w / 4 + rng.nextInt(Math.max(1, w / 2));
+                y = h / 4 + rng.nextInt(Math.max(1, h / 2));
+                if (src[y * w + x] == MOUNTAIN) break;
+            }
+
+            // Head for the closest edge
+            int toLeft = x, toRight = w - 1 - x, toTop = y, toBottom = h - 1 - y;
+            int min = Math.min(Math.min(toLeft, toRight), Math.min(toTop, toBottom));
+            int dir = min == toRight ? 0 : min == toLeft ? 1 : min == toBottom ? 2 : 3;
+
+            for (int step = 0; step < w + h; step++) {
+                int i = y * w + x;
+                if (step > 2 && src[i] == WATER) break;
+                water.set(i);
+                if (step % fordSpacing == fordSpacing - 1) {
+                    if (anchorCount + 2 > anchors.length) anchors = Arrays.copyOf(anchors, anchors.length * 2);
+                    anchors[anchorCount++] = i;
+                    anchors[anchorCount++] = dir;
+                }
+
+                // Mostly keep heading out, sometimes meander sideways
+                int roll = rng.nextInt(10);
+                int d = roll < 6 ? dir : (dir < 2 ? 2 : 0) + (roll < 8 ? 0 : 1);
+                x += DX[d];
+                y += DY[d];
+                if (x < 0 || y < 0 || x >= w || y >= h) break;
+            }
+        }
+
+        // Fords go in once every river is carved, so a later river can't cut through an earlier one's ford
+        for (int k = 0; k < anchorCount; k += 2) layFord(anchors[k], anchors[k + 1], w, h);
+        reconnect(src, w, h);
+    }
+
+    // Straight across the flow from the anchor, through every river tile on the way, unless that's too long
+    private void layFord(int anchor, int dir, int w, int h) {
+        int ax = anchor % w, ay = anchor / w;
+        int px = dir < 2 ? 0 : 1, py = dir < 2 ? 1 : 0;
+        int lo = 0, hi = 0;
+        while (hi < MAX_FORD && isRiver(ax + (hi + 1) * px, ay + (hi + 1) * py, w, h)) hi++;
+        while (hi - lo < MAX_FORD && isRiver(ax + (lo - 1) * px, ay + (lo - 1) * py, w, h)) lo--;
+        if (hi - lo >= MAX_FORD) return;
+        for (int k = lo; k <= hi; k++) ford((ay + k * py) * w + ax + k * px);
+    }
+
+    private boolean isRiver(int x, int y, int w, int h) {
+        return x >= 0 && y >= 0 && x < w && y < h && water.get(y * w + x);
+    }
+
+    private void ford(int i) {
+        water.clear(i);
+        fords.set(i);
+    }
+
+    private static boolean isLand(byte[] src, BitSet water, BitSet fords, int i) {
+        return fords.get(i) || (!water.get(i) && TYPES[src[i]].isAccessible());
+    }
+
+    // Union-find over the land left after carving; each river tile next to land then searches the river around
+    // it for the shortest crossing to land in another set, and fords it
+    private void reconnect(byte[] src, int w, int h) {
+        int n = w * h;
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) parent[i] = isLand(src, water, fords, i) ? i : -1;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = y * w + x;
+                if (parent[i] < 0) continue;
+                if (x + 1 < w && parent[i + 1] >= 0) union(parent, i, i + 1);
+                if (y + 1 < h && parent[i + w] >= 0) union(parent, i, i + w);
+            }
+        }
+
+        for (int start = water.nextSetBit(0); start >= 0; start = water.nextSetBit(start + 1)) {
+            int bank = landNeighbour(parent, start, w, h, -1);
+            if (bank >= 0) cross(parent, start, bank, w, h);
+        }
+    }
+
+    private void cross(int[] parent, int start, int bank, int w, int h) {
+        int sx = start % w, sy = start / w;
+        int ox = sx - MAX_FORD, oy = sy - MAX_FORD;
+        if (++generation == 0) {
+            Arrays.fill(seen, 0);
+            generation = 1;
+        }
+        int root = find(parent, bank);
+        int head = 0, tail = 0;
+        int first = MAX_FORD * SPAN + MAX_FORD;
+        seen[first] = generation;
+        from[first] = -1;
+        depth[first] = 1;
+        queue[tail++] = first;
+        while (head < tail) {
+            int cur = queue[head++];
+            int cx = ox + cur % SPAN, cy = oy + cur / SPAN;
+            int other = landNeighbour(parent, cy * w + cx, w, h, root);
+            if (other >= 0) {
+                for (int l = cur; l >= 0; l = from[l]) {
+                    int i = (oy + l / SPAN) * w + ox + l % SPAN;
+                    ford(i);
+                    parent[i] = i;
+                    union(parent, i, bank);
+                }
+                union(parent, bank, other);
+                return;
+            }
+            if (depth[cur] == MAX_FORD) continue;
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = cx + DX[dir], ny = cy + DY[dir];
+                if (!isRiver(nx, ny, w, h)) continue;
+                int nl = (ny - oy) * SPAN + nx - ox;
+                if (seen[nl] == generation) continue;
+                seen[nl] = generation;
+                from[nl] = cur;
+                depth[nl] = depth[cur] + 1;
+                queue[tail++] = nl;
+            }
+        }
+    }
+
+    // A land tile next to i whose set isn't notRoot (-1 for any land), or -1
+    private static int landNeighbour(int[] parent, int i, int w, int h, int notRoot) {
+        int x = i % w, y = i / w;
+        for (int dir = 0; dir < 4; dir++) {
+            int nx = x + DX[dir], ny = y + DY[dir];
+            if (nx < 0 || ny < 0 || nx >= w || ny >= h) continue;
+            int nb = ny * w + nx;
+            if (parent[nb] >= 0 && find(parent, nb) != notRoot) return nb;
+        }
+        return -1;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a), rb = find(parent, b);
+        if (ra != rb) parent[rb] = ra;
+    }
+
+    @Override
+    public void apply(byte[] src, byte[] dst, int w, int h, int y0, int y1) {
+        for (int i = y0 * w, end = y1 * w; i < end; i++) {
+            if (water.get(i)) dst[i] = WATER;
+            else if (fords.get(i)) dst[i] = GRASS;
+            else dst[i] = src[i];
+        }
+    }
+}
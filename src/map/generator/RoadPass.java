@@ -0,0 +1,86 @@
+package map.generator;
+
+import buildings.BuildingType;
+import map.GameMap;
+import map.Position;
+import map.StartLayout;
+import map.TileType;
+import map.path.IntRingQueue;
+
+// Lays a dirt road between the two bases once the start planner has placed them, along the shortest walk over
+// open ground from the tiles around the enemy's castle and barracks to those around the human's. Roads only go
+// down on grass, so they never change what is reachable, only how cheaply; bases not joined by open ground get no
+// road. Roads stay buildable, so the line they take costs no building sites. Runs on the finished map: the layout
+// isn't known while the pipeline passes run.
+public class RoadPass {
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+    private static final byte SOURCE = 5;
+    private static final byte TARGET = 6;
+
+    public void apply(GameMap map) {
+        StartLayout layout = map.getStartLayout();
+        if (layout == null) return;
+        int w = map.getWidth();
+        // Per tile, 1 + the direction it was first reached in, SOURCE around the enemy base, TARGET around the
+        // human one, -1 under either base's buildings, 0 otherwise
+        byte[] came = new byte[w * map.getHeight()];
+        block(map, came, layout.enemyCastle, BuildingType.CASTLE);
+        block(map, came, layout.enemyBarracks, BuildingType.BARRACKS);
+        block(map, came, layout.humanCastle, BuildingType.CASTLE);
+        block(map, came, layout.humanBarracks, BuildingType.BARRACKS);
+        ring(map, came, layout.humanCastle, BuildingType.CASTLE, TARGET, null);
+        ring(map, came, layout.humanBarracks, BuildingType.BARRACKS, TARGET, null);
+        IntRingQueue queue = new IntRingQueue(256);
+        ring(map, came, layout.enemyCastle, BuildingType.CASTLE, SOURCE, queue);
+        ring(map, came, layout.enemyBarracks, BuildingType.BARRACKS, SOURCE, queue);
+
+        while (!queue.isEmpty()) {
+            int cur = queue.poll();
+            int cx = cur % w, cy = cur / w;
+            // Alternating which axis goes first bends the road into a diagonal instead of an L along the edges
+            int turn = (cx + cy) & 1;
+            for (int k = 0; k < 4; k++) {
+                int dir = turn == 0 ? k : k ^ 2;
+                int nx = cx + DX[dir], ny = cy + DY[dir];
+                if (!map.inBounds(nx, ny)) continue;
+                int nb = ny * w + nx;
+                if (came[nb] == TARGET) {
+                    lay(map, nb);
+                    for (int i = cur; ; i -= DY[came[i] - 1] * w + DX[came[i] - 1]) {
+                        lay(map, i);
+                        if (came[i] == SOURCE) break;
+                    }
+                    return;
+                }
+                if (came[nb] != 0 || !map.getType(nx, ny).isAccessible()) continue;
+                came[nb] = (byte) (dir + 1);
+                queue.add(nb);
+            }
+        }
+    }
+
+    private static void lay(GameMap map, int i) {
+        int x = i % map.getWidth(), y = i / map.getWidth();
+        if (map.getType(x, y) == TileType.GRASS) map.setType(x, y, TileType.ROAD);
+    }
+
+    private static void block(GameMap map, byte[] came, Position p, BuildingType type) {
+        map.forEachInRegion(p.x, p.y, p.x + type.getWidth(), p.y + type.getHeight(),
+                (x, y, i) -> came[y * map.getWidth() + x] = -1);
+    }
+
+    // Open tiles bordering a building get the mark; source ones are queued too
+    private static void ring(GameMap map, byte[] came, Position p, BuildingType type, byte mark, IntRingQueue queue) {
+        int w = map.getWidth();
+        for (int y = p.y - 1; y <= p.y + type.getHeight(); y++) {
+            for (int x = p.x - 1; x <= p.x + type.getWidth(); x++) {
+                if (!map.inBounds(x, y) || !map.getType(x, y).isAccessible()) continue;
+                int i = y * w + x;
+                if (came[i] != 0) continue;
+                came[i] = mark;
+                if (queue != null) queue.add(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package map.generator;
+
+import map.TileType;
+
+// Cellular-automaton majority rule: a tile whose 8-neighbourhood holds at least `threshold` tiles of one
+// type becomes that type, which dissolves speckle and grows coherent patches.
+public class SmoothingPass implements MapPass {
+    private static final int TYPES = TileType.values().length;
+
+    private final int threshold;
+
+    public SmoothingPass() {
+        this(5);
+    }
+
+    public SmoothingPass(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void apply(byte[] src, byte[] dst, int w, int h, int y0, int y1) {
+        int[] counts = new int[TYPES];
+        for (int y = y0; y < y1; y++) {
+            int ya = Math.max(0, y - 1), yb = Math.min(h - 1, y + 1);
+            for (int x = 0; x < w; x++) {
+                int xa = Math.max(0, x - 1), xb = Math.min(w - 1, x + 1);
+                for (int t = 0; t < TYPES; t++) counts[t] = 0;
+                for (int ny = ya; ny <= yb; ny++) {
+                    int row = ny * w;
+                    for (int nx = xa; nx <= xb; nx++) counts[src[row + nx]]++;
+                }
+                int self = src[y * w + x];
+                counts[self]--;
+
+                byte out = (byte) self;
+                for (int t = 0; t < TYPES; t++) {
+                    if (counts[t] >= threshold) {
+                        out = (byte) t;
+                        break;
+                    }
+                }
+                dst[y * w + x] = out;
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package map.generator;
+
+import map.GameMap;
+import map.TileType;
+
+// Clears a size x size grass square in the top-left and bottom-right corners where the starting
+// castles and barracks go.
+public class StartAreaPass implements MapPass {
+    private static final byte GRASS = (byte) TileType.GRASS.ordinal();
+
+    private final int size;
+
+    public StartAreaPass(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public void apply(byte[] src, byte[] dst, int w, int h, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            for (int x = 0; x < w; x++) {
+                boolean corner = (x < size && y < size) || (x >= w - size && y >= h - size);
+                dst[y * w + x] = corner ? GRASS : src[y * w + x];
+            }
+        }
+    }
+
+    // Same result applied straight to a map, for maps too large to run through a pipeline
+    public void apply(GameMap map) {
+        int w = map.getWidth(), h = map.getHeight();
+        map.forEachInRegion(0, 0, size, size, (x, y, i) -> map.setType(x, y, TileType.GRASS));
+        map.forEachInRegion(w - size, h - size, w, h, (x, y, i) -> map.setType(x, y, TileType.GRASS));
+    }
+}
@@ -0,0 +1,207 @@
+package map.generator;
+
+import map.GameMap;
+import map.Passability;
+import map.PlacementIndex;
+import map.Position;
+import map.StartLayout;
+import map.TileType;
+import resources.ResourceType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Picks fair start positions on a generated map. Each side gets a 4x2 grass block (castle and barracks side by
+// side) from its own corner region, enemy top-left and human bottom-right. Every candidate is scored by the
+// resource tiles bordering the land its units can walk to within `radius` steps, a bounded BFS distance field
+// run per candidate in parallel. A pair is accepted when both spawns share a passability component and their
+// per-resource counts differ by at most maxImbalance of the combined total. Counts saturate at `enough` tiles
+// of a kind, so two sides that both have plenty are even however much of it there is.
+public class StartPlanner {
+    private static final int BLOCK_W = 4;
+    private static final int BLOCK_H = 2;
+    private static final int MAX_REGION = 64;
+    private static final int MAX_CANDIDATES = 48;
+    private static final int KINDS = ResourceType.values().length;
+
+    private final int radius;
+    private final int enough;
+    private final double maxImbalance;
+    private final int minResources;
+
+    public StartPlanner(int radius, int enough, double maxImbalance, int minResources) {
+        this.radius = radius;
+        this.enough = enough;
+        this.maxImbalance = maxImbalance;
+        this.minResources = minResources;
+    }
+
+    private static final class Site {
+        final int bx, by;
+        final int spawn;
+        final int[] counts = new int[KINDS];
+        int total;
+
+        Site(int bx, int by, int spawn) {
+            this.bx = bx;
+            this.by = by;
+            this.spawn = spawn;
+        }
+    }
+
+    // Fairest acceptable layout, or null when this map has none and should be regenerated or repaired
+    public StartLayout plan(GameMap map) {
+        int w = map.getWidth(), h = map.getHeight();
+        int rx = Math.max(BLOCK_W, Math.min(MAX_REGION, w / 3));
+        int ry = Math.max(BLOCK_H + 1, Math.min(MAX_REGION, h / 3));
+
+        Passability pass = map.getPassability();
+        List<Site> enemy = candidates(map, 0, 0, rx - BLOCK_W + 1, ry - BLOCK_H, false);
+        List<Site> human = candidates(map, w - rx, h - ry + 1, w - BLOCK_W + 1, h - BLOCK_H + 1, true);
+        // Sites in a pocket the other side can't reach are useless whatever their resources
+        BitSet enemyComps = components(pass, enemy), humanComps = components(pass, human);
+        enemy = spread(enemy, pass, humanComps, 0, 0);
+        human = spread(human, pass, enemyComps, w, h);
+        if (enemy.isEmpty() || human.isEmpty()) return null;
+
+        Site[] all = new Site[enemy.size() + human.size()];
+        for (int k = 0; k < enemy.size(); k++) all[k] = enemy.get(k);
+        for (int k = 0; k < human.size(); k++) all[enemy.size() + k] = human.get(k);
+        IntStream.range(0, all.length).parallel().forEach(k -> score(map, pass, all[k]));
+
+        Site bestE = null, bestH = null;
+        double bestImbalance = Double.MAX_VALUE;
+        int bestMin = -1;
+        for (Site e : enemy) {
+            if (e.total < minResources) continue;
+            for (Site hs : human) {
+                if (hs.total < minResources || overlaps(e, hs)) continue;
+                double imbalance = imbalance(e, hs);
+                if (imbalance > maxImbalance) continue;
+                int min = Math.min(e.total, hs.total);
+                if (imbalance > bestImbalance || (imbalance == bestImbalance && min <= bestMin)) continue;
+                if (!pass.connected(e.spawn, hs.spawn)) continue;
+                bestE = e;
+                bestH = hs;
+                bestImbalance = imbalance;
+                bestMin = min;
+            }
+        }
+        if (bestE == null) return null;
+        return new StartLayout(map.pos(bestH.bx + 2, bestH.by), map.pos(bestH.bx, bestH.by),
+                map.pos(bestE.bx, bestE.by), map.pos(bestE.bx + 2, bestE.by));
+    }
+
+    // Falls back to the corner layout: clears both blocks and their spawn rows, then carves a grass corridor
+    // between the spawns unless they are already connected. Paged maps skip the check (no passability index
+    // that large) and always carve, which only touches the non-grass tiles along one L-shaped line.
+    public StartLayout repair(GameMap map, boolean checkConnected) {
+        int w = map.getWidth(), h = map.getHeight();
+        StartLayout layout = StartLayout.corners(map);
+        clear(map, 0, 0, BLOCK_W, BLOCK_H + 1);
+        clear(map, w - BLOCK_W, h - BLOCK_H - 1, w, h);
+
+        int ex = 2, ey = BLOCK_H, hx = w - BLOCK_W, hy = h - BLOCK_H - 1;
+        if (checkConnected && map.getPassability().connected(map.index(ex, ey), map.index(hx, hy))) return layout;
+        clear(map, Math.min(ex, hx), ey, Math.max(ex, hx) + 1, ey + 1);
+        clear(map, hx, Math.min(ey, hy), hx + 1, Math.max(ey, hy) + 1);
+        return layout;
+    }
+
+    private static void clear(GameMap map, int x0, int y0, int x1, int y1) {
+        map.forEachInRegion(x0, y0, x1, y1, (x, y, i) -> {
+            if (!map.getType(x, y).isAccessible()) map.setType(x, y, TileType.GRASS);
+        });
+    }
+
+    // Valid blocks with top-left in [x0, x1) x [y0, y1) that have a walkable spawn tile
+    private List<Site> candidates(GameMap map, int x0, int y0, int x1, int y1, boolean humanSide) {
+        PlacementIndex placement = map.getPlacementIndex();
+        Passability pass = map.getPassability();
+        List<Site> out = new ArrayList<>();
+        placement.forEachSite(x0, y0, x1, y1, BLOCK_W, BLOCK_H, i -> {
+            int bx = map.xOf(i), by = map.yOf(i);
+            // Units come out of the barracks' long side facing the middle of the map
+            int sx = humanSide ? bx : bx + 2;
+            int sy = humanSide ? by - 1 : by + BLOCK_H;
+            for (int x = sx; x < sx + 2; x++) {
+                if (pass.isPassable(x, sy)) {
+                    out.add(new Site(bx, by, map.index(x, sy)));
+                    return;
+                }
+            }
+        });
+        return out;
+    }
+
+    private static BitSet components(Passability pass, List<Site> sites) {
+        BitSet out = new BitSet();
+        for (Site s : sites) out.set(pass.component(s.spawn));
+        return out;
+    }
+
+    // Sites whose component is among the given ones, ordered by distance from the corner (cx, cy). Beyond
+    // MAX_CANDIDATES an even sample is kept, so terrain features wider than the corner itself still get a look.
+    private static List<Site> spread(List<Site> sites, Passability pass, BitSet components, int cx, int cy) {
+        List<Site> out = new ArrayList<>();
+        for (Site s : sites) {
+            if (components.get(pass.component(s.spawn))) out.add(s);
+        }
+        out.sort(Comparator.comparingInt(s -> Position.manhattan(s.bx, s.by, cx, cy)));
+        if (out.size() <= MAX_CANDIDATES) return out;
+        List<Site> sample = new ArrayList<>(MAX_CANDIDATES);
+        for (int k = 0; k < MAX_CANDIDATES; k++) sample.add(out.get((int) ((long) k * out.size() / MAX_CANDIDATES)));
+        return sample;
+    }
+
+    // Distance field over a (2r+3)^2 window around the spawn; resource tiles touching any reached tile count once
+    private void score(GameMap map, Passability pass, Site s) {
+        int side = 2 * radius + 3;
+        int ox = map.xOf(s.spawn) - radius - 1, oy = map.yOf(s.spawn) - radius - 1;
+        int[] dist = new int[side * side];
+        Arrays.fill(dist, -1);
+        BitSet counted = new BitSet(side * side);
+        int[] queue = new int[side * side];
+        int head = 0, tail = 0;
+
+        int start = (radius + 1) * side + radius + 1;
+        dist[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cur = queue[head++];
+            int lx = cur % side, ly = cur / side;
+            for (int dir = 0; dir < 4; dir++) {
+                int nlx = lx + (dir == 0 ? 1 : dir == 1 ? -1 : 0);
+                int nly = ly + (dir == 2 ? 1 : dir == 3 ? -1 : 0);
+                int x = ox + nlx, y = oy + nly;
+                if (!map.inBounds(x, y)) continue;
+                int nb = nly * side + nlx;
+                if (pass.isPassable(x, y)) {
+                    if (dist[nb] >= 0 || dist[cur] == radius) continue;
+                    dist[nb] = dist[cur] + 1;
+                    queue[tail++] = nb;
+                } else if (!counted.get(nb)) {
+                    counted.set(nb);
+                    ResourceType r = map.getType(x, y).getResource();
+                    if (r == null || s.counts[r.ordinal()] == enough) continue;
+                    s.counts[r.ordinal()]++;
+                    s.total++;
+                }
+            }
+        }
+    }
+
+    private static double imbalance(Site a, Site b) {
+        int diff = 0;
+        for (int k = 0; k < KINDS; k++) diff += Math.abs(a.counts[k] - b.counts[k]);
+        return (double) diff / Math.max(1, a.total + b.total);
+    }
+
+    private static boolean overlaps(Site a, Site b) {
+        return a.bx < b.bx + BLOCK_W && b.bx < a.bx + BLOCK_W && a.by - 1 <= b.by + BLOCK_H && b.by - 1 <= a.by + BLOCK_H;
+    }
+}
@@ -1,8 +1,6 @@
 package map.generator;
 
 import map.GameMap;
-import map.Position;
-import map.Tile;
 import map.TileType;
 
 public class StaticMapGenerator implements MapGenerator {
@@ -17,13 +15,8 @@ public class StaticMapGenerator implements MapGenerator {
     @Override
     public GameMap generate() {
         GameMap map = new GameMap(w, h);
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                TileType t = TileType.GRASS;
-                if (y == 0 || x == 0 || y == h - 1 || x == w - 1) t = TileType.WATER;
-                map.setTile(x, y, new Tile(new Position(x, y), t));
-            }
-        }
+        map.parallelMapTerrain((x, y, current) ->
+                (y == 0 || x == 0 || y == h - 1 || x == w - 1) ? TileType.WATER : TileType.GRASS);
         return map;
     }
 }
@@ -0,0 +1,97 @@
+package map.path;
+
+import buildings.Building;
+import map.GameMap;
+import map.Passability;
+import map.Position;
+
+import java.util.Arrays;
+
+// Steps from every tile to the nearest 4-neighbour of a building, walking over passable tiles (terrain and
+// buildings; units are ignored, they move every turn). One multi-source BFS outward from the building fills the
+// whole field, after which any number of units read their next step in O(1).
+public class FlowField {
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final GameMap map;
+    private final Building target;
+    private final int width;
+    private final int height;
+    private final int[] dist;
+    boolean stale = true;
+
+    FlowField(GameMap map, Building target) {
+        this.map = map;
+        this.target = target;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.dist = new int[width * height];
+    }
+
+    public Building getTarget() { return target; }
+
+    // Steps to the nearest goal tile, 0 on one, -1 where the building can't be reached
+    public int distance(int index) { return dist[index]; }
+
+    public int distance(int x, int y) {
+        return x < 0 || y < 0 || x >= width || y >= height ? -1 : dist[y * width + x];
+    }
+
+    // First neighbour one step closer that the filter accepts, or -1
+    public int next(int index, Pathfinder.TileFilter filter) {
+        int d = dist[index];
+        if (d <= 0) return -1;
+        int x = index % width, y = index / width;
+        for (int dir = 0; dir < 4; dir++) {
+            int nx = x + DX[dir], ny = y + DY[dir];
+            if (distance(nx, ny) == d - 1 && filter.canEnter(nx, ny)) return ny * width + nx;
+        }
+        return -1;
+    }
+
+    // Whether a passability change at (x, y) could alter any distance: the tile or a neighbour was reached, or it
+    // borders the building and so is a goal tile in its own right
+    boolean touches(int x, int y) {
+        if (distance(x, y) >= 0) return true;
+        Position p = target.getPosition();
+        if (x >= p.x - 1 && y >= p.y - 1 && x <= p.x + target.getWidth() && y <= p.y + target.getHeight()) return true;
+        for (int dir = 0; dir < 4; dir++) {
+            if (distance(x + DX[dir], y + DY[dir]) >= 0) return true;
+        }
+        return false;
+    }
+
+    void compute(Passability pass, IntRingQueue queue) {
+        Arrays.fill(dist, -1);
+        queue.clear();
+        int bx = target.getPosition().x, by = target.getPosition().y;
+        int bw = target.getWidth(), bh = target.getHeight();
+        for (int y = by; y < by + bh; y++) {
+            for (int x = bx; x < bx + bw; x++) {
+                for (int dir = 0; dir < 4; dir++) seed(pass, queue, x + DX[dir], y + DY[dir]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int cur = queue.poll();
+            int cx = cur % width, cy = cur / width;
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = cx + DX[dir], ny = cy + DY[dir];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+                int nb = ny * width + nx;
+                if (dist[nb] >= 0 || !pass.isPassable(nx, ny)) continue;
+                dist[nb] = dist[cur] + 1;
+                queue.add(nb);
+            }
+        }
+        stale = false;
+    }
+
+    private void seed(Passability pass, IntRingQueue queue, int x, int y) {
+        if (!pass.isPassable(x, y)) return;
+        int i = y * width + x;
+        if (dist[i] == 0) return;
+        dist[i] = 0;
+        queue.add(i);
+    }
+}
@@ -0,0 +1,64 @@
+package map.path;
+
+import buildings.Building;
+import map.GameMap;
+import map.MapListener;
+import map.Passability;
+import map.TileType;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Flow fields toward buildings, one per target, computed on first use and reused until passability changes
+// somewhere the field could notice (see FlowField.touches). Unit moves never invalidate a field, so pathing toward
+// a shared target costs one BFS per change rather than one per unit. A field is dropped when its building goes.
+// Each set walks one passability layer, on foot or woodland.
+public class FlowFields implements MapListener {
+    private final GameMap map;
+    private final boolean woodland;
+    private final Map<Building, FlowField> fields = new IdentityHashMap<>();
+    private final IntRingQueue queue = new IntRingQueue(256);
+    private int computeCount;
+
+    public FlowFields(GameMap map) {
+        this(map, false);
+    }
+
+    public FlowFields(GameMap map, boolean woodland) {
+        this.map = map;
+        this.woodland = woodland;
+    }
+
+    public FlowField toward(Building target) {
+        FlowField f = fields.computeIfAbsent(target, b -> new FlowField(map, b));
+        if (f.stale) {
+            f.compute(map.getPassability(woodland), queue);
+            computeCount++;
+        }
+        return f;
+    }
+
+    // Number of BFS runs so far, for telling cache hits from rebuilds
+    public int getComputeCount() { return computeCount; }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) {
+        if (Passability.opens(before, woodland) == Passability.opens(after, woodland) || map.getBuilding(x, y) != null) {
+            return;
+        }
+        invalidate(x, y);
+    }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) {
+        if (before != null) fields.remove(before);
+        if ((before == null) == (after == null) || !Passability.opens(map.getType(x, y), woodland)) return;
+        invalidate(x, y);
+    }
+
+    private void invalidate(int x, int y) {
+        for (FlowField f : fields.values()) {
+            if (!f.stale && f.touches(x, y)) f.stale = true;
+        }
+    }
+}
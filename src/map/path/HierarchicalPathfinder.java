@@ -0,0 +1,380 @@
+package map.path;
+
+import buildings.Building;
+import map.GameMap;
+import map.MapListener;
+import map.Passability;
+import map.TileType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Hierarchical pathfinding (HPA*) for maps too big to search tile by tile. The map is cut into square clusters;
+// every open stretch of a border between two clusters gets an entrance at its middle, one node on either side
+// joined by a single step, and the nodes of a cluster are joined by their walking distance inside it. A route is
+// found with A* on that small graph and only the stretch up to the next waypoint is ever walked tile by tile.
+// Clusters are built the first time a route reaches them and rebuilt only after passability changed inside them or
+// on their border. Units are ignored, like in the flow fields. Each instance walks one passability layer, on
+// foot or woodland. Not thread-safe.
+public class HierarchicalPathfinder implements MapListener {
+    public static final int CLUSTER_SIZE = 16;
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+    // Open stretches per border are at most every other tile
+    private static final int MAX_NODES = 4 * ((CLUSTER_SIZE + 1) / 2);
+
+    private final GameMap map;
+    private final boolean woodland;
+    private final int width;
+    private final int height;
+    private final int clustersX;
+    private final int[][] nodes;
+    private final int[][] links;
+    private final int[][] costs;
+    private final BitSet dirty;
+    private int rebuildCount;
+
+    // In-cluster BFS over the bounds of one cluster at a time
+    private final int[] local = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+    private final int[] localQueue = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+    private int bx0, by0, bx1, by1;
+    private int localTail;
+    private final int[] nodeBuf = new int[MAX_NODES];
+    private final int[] linkBuf = new int[MAX_NODES];
+
+    // A* over node ids (cluster * MAX_NODES + slot), allocated on the first route
+    private int[] stamp;
+    private int[] cost;
+    private int[] parent;
+    private int[] goalStamp;
+    private int[] goalCost;
+    private int generation;
+    // Ordered by priority, then deepest first
+    private long[] heap = new long[256];
+    private int[] heapIds = new int[256];
+    private int heapSize;
+
+    private int[] waypoints = new int[64];
+    private int[] waypointCosts = new int[64];
+    private int waypointCount;
+
+    public HierarchicalPathfinder(GameMap map) {
+        this(map, false);
+    }
+
+    public HierarchicalPathfinder(GameMap map, boolean woodland) {
+        this.map = map;
+        this.woodland = woodland;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.clustersX = (width + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        int clusters = clustersX * ((height + CLUSTER_SIZE - 1) / CLUSTER_SIZE);
+        this.nodes = new int[clusters][];
+        this.links = new int[clusters][];
+        this.costs = new int[clusters][];
+        this.dirty = new BitSet(clusters);
+        dirty.set(0, clusters);
+    }
+
+    // Steps along a route from start to a tile the goal accepts, or -1 if there is none; every goal tile lies in
+    // [x0, x1) x [y0, y1). The route is a real walk but not always the shortest one: paths between entrances stay
+    // inside their cluster and the search trades a little length for speed (see priority). Its waypoints are kept
+    // until the next call.
+    public int route(int start, Pathfinder.Goal goal, int x0, int y0, int x1, int y1) {
+        waypointCount = 0;
+        Passability pass = map.getPassability(woodland);
+        if (!pass.isPassable(start)) return -1;
+        begin();
+
+        int startCluster = clusterOf(start % width, start / width);
+        int best = Integer.MAX_VALUE, bestNode = -1;
+        int cx0 = Math.max(0, x0) / CLUSTER_SIZE, cy0 = Math.max(0, y0) / CLUSTER_SIZE;
+        int cx1 = (Math.min(width, x1) - 1) / CLUSTER_SIZE, cy1 = (Math.min(height, y1) - 1) / CLUSTER_SIZE;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * clustersX + cx;
+                ensure(c);
+                beginLocal(c);
+                for (int y = Math.max(y0, by0); y < Math.min(y1, by1); y++) {
+                    for (int x = Math.max(x0, bx0); x < Math.min(x1, bx1); x++) {
+                        int t = y * width + x;
+                        if (pass.isPassable(t) && goal.isGoal(t)) seedLocal(t);
+                    }
+                }
+                if (localTail == 0) continue;
+                runLocal(pass);
+                int[] ns = nodes[c];
+                for (int k = 0; k < ns.length; k++) {
+                    int d = localDistance(ns[k]);
+                    if (d < 0) continue;
+                    goalStamp[c * MAX_NODES + k] = generation;
+                    goalCost[c * MAX_NODES + k] = d;
+                }
+                if (c == startCluster && localDistance(start) >= 0) best = localDistance(start);
+            }
+        }
+
+        ensure(startCluster);
+        beginLocal(startCluster);
+        seedLocal(start);
+        runLocal(pass);
+        int[] ns = nodes[startCluster];
+        for (int k = 0; k < ns.length; k++) {
+            int d = localDistance(ns[k]);
+            if (d >= 0) relax(startCluster * MAX_NODES + k, ns[k], d, -1, goal);
+        }
+
+        while (heapSize > 0) {
+            int f = (int) (heap[0] >>> 32), id = pop();
+            int c = id / MAX_NODES, k = id % MAX_NODES;
+            int tile = nodes[c][k];
+            if (f != priority(cost[id], tile, goal)) continue;
+            if (f >= best) break;
+            if (goalStamp[id] == generation && cost[id] + goalCost[id] < best) {
+                best = cost[id] + goalCost[id];
+                bestNode = id;
+            }
+
+            int n = nodes[c].length;
+            int[] cs = costs[c];
+            for (int j = 0; j < n; j++) {
+                int d = cs[k * n + j];
+                if (d > 0) relax(c * MAX_NODES + j, nodes[c][j], cost[id] + d, id, goal);
+            }
+            int mask = links[c][k];
+            for (int dir = 0; dir < 4; dir++) {
+                if ((mask & (1 << dir)) == 0) continue;
+                int nx = tile % width + DX[dir], ny = tile / width + DY[dir];
+                int nc = clusterOf(nx, ny);
+                ensure(nc);
+                int slot = slotOf(nc, ny * width + nx);
+                relax(nc * MAX_NODES + slot, ny * width + nx, cost[id] + 1, id, goal);
+            }
+        }
+        if (best == Integer.MAX_VALUE) return -1;
+
+        int count = 0;
+        for (int id = bestNode; id >= 0; id = parent[id]) count++;
+        if (count > waypoints.length) {
+            waypoints = new int[Integer.highestOneBit(count) * 2];
+            waypointCosts = new int[waypoints.length];
+        }
+        waypointCount = count;
+        for (int id = bestNode, k = count - 1; id >= 0; id = parent[id], k--) {
+            waypoints[k] = nodes[id / MAX_NODES][id % MAX_NODES];
+            waypointCosts[k] = cost[id];
+        }
+        return best;
+    }
+
+    // Entrances the last route passes through in order, none when it stays inside the start's cluster
+    public int getWaypointCount() { return waypointCount; }
+    public int getWaypoint(int k) { return waypoints[k]; }
+
+    // Steps from the start to the k-th waypoint along the route
+    public int getWaypointCost(int k) { return waypointCosts[k]; }
+
+    // Clusters (re)built so far, for telling repairs from cache hits
+    public int getRebuildCount() { return rebuildCount; }
+
+    @Override
+    public void terrainChanged(int x, int y, TileType before, TileType after) {
+        if (Passability.opens(before, woodland) == Passability.opens(after, woodland) || map.getBuilding(x, y) != null) {
+            return;
+        }
+        invalidate(x, y);
+    }
+
+    @Override
+    public void buildingChanged(int x, int y, Building before, Building after) {
+        if ((before == null) == (after == null) || !Passability.opens(map.getType(x, y), woodland)) return;
+        invalidate(x, y);
+    }
+
+    // A border tile also decides the entrances of the cluster across that border
+    private void invalidate(int x, int y) {
+        dirty.set(clusterOf(x, y));
+        int ox = x % CLUSTER_SIZE, oy = y % CLUSTER_SIZE;
+        if (ox == 0 && x > 0) dirty.set(clusterOf(x - 1, y));
+        if (ox == CLUSTER_SIZE - 1 && x + 1 < width) dirty.set(clusterOf(x + 1, y));
+        if (oy == 0 && y > 0) dirty.set(clusterOf(x, y - 1));
+        if (oy == CLUSTER_SIZE - 1 && y + 1 < height) dirty.set(clusterOf(x, y + 1));
+    }
+
+    private int clusterOf(int x, int y) {
+        return (y / CLUSTER_SIZE) * clustersX + x / CLUSTER_SIZE;
+    }
+
+    private int slotOf(int c, int tile) {
+        int[] ns = nodes[c];
+        for (int k = 0; k < ns.length; k++) {
+            if (ns[k] == tile) return k;
+        }
+        throw new IllegalStateException("No entrance at " + tile);
+    }
+
+    private void ensure(int c) {
+        if (dirty.get(c)) build(c);
+    }
+
+    // Both clusters on a border scan the same tile pairs, so they always agree on where its entrances are
+    private void build(int c) {
+        Passability pass = map.getPassability(woodland);
+        bounds(c);
+        int n = 0;
+        if (bx1 < width) n = scanBorder(pass, n, bx1 - 1, by0, 0, 1, by1 - by0, 0);
+        if (bx0 > 0) n = scanBorder(pass, n, bx0, by0, 0, 1, by1 - by0, 1);
+        if (by1 < height) n = scanBorder(pass, n, bx0, by1 - 1, 1, 0, bx1 - bx0, 2);
+        if (by0 > 0) n = scanBorder(pass, n, bx0, by0, 1, 0, bx1 - bx0, 3);
+
+        int[] cs = new int[n * n];
+        for (int i = 0; i < n; i++) {
+            beginLocal(c);
+            seedLocal(nodeBuf[i]);
+            runLocal(pass);
+            for (int j = 0; j < n; j++) cs[i * n + j] = localDistance(nodeBuf[j]);
+        }
+        nodes[c] = Arrays.copyOf(nodeBuf, n);
+        links[c] = Arrays.copyOf(linkBuf, n);
+        costs[c] = cs;
+        dirty.clear(c);
+        rebuildCount++;
+    }
+
+    // Walks len tiles from (x, y) along (sx, sy); wherever both the tile and its neighbour across dir are passable
+    // the stretch gets one entrance
+    private int scanBorder(Passability pass, int n, int x, int y, int sx, int sy, int len, int dir) {
+        int runStart = -1;
+        for (int k = 0; k <= len; k++) {
+            boolean open = k < len && pass.isPassable(x + k * sx, y + k * sy)
+                    && pass.isPassable(x + k * sx + DX[dir], y + k * sy + DY[dir]);
+            if (open && runStart < 0) runStart = k;
+            if (open || runStart < 0) continue;
+            int mid = (runStart + k - 1) / 2;
+            n = addNode(n, (y + mid * sy) * width + x + mid * sx, dir);
+            runStart = -1;
+        }
+        return n;
+    }
+
+    // A corner tile can be an entrance on two borders; it stays one node with two links
+    private int addNode(int n, int tile, int dir) {
+        for (int k = 0; k < n; k++) {
+            if (nodeBuf[k] == tile) {
+                linkBuf[k] |= 1 << dir;
+                return n;
+            }
+        }
+        nodeBuf[n] = tile;
+        linkBuf[n] = 1 << dir;
+        return n + 1;
+    }
+
+    private void bounds(int c) {
+        bx0 = (c % clustersX) * CLUSTER_SIZE;
+        by0 = (c / clustersX) * CLUSTER_SIZE;
+        bx1 = Math.min(width, bx0 + CLUSTER_SIZE);
+        by1 = Math.min(height, by0 + CLUSTER_SIZE);
+    }
+
+    private void beginLocal(int c) {
+        bounds(c);
+        Arrays.fill(local, -1);
+        localTail = 0;
+    }
+
+    private void seedLocal(int tile) {
+        int l = (tile / width - by0) * CLUSTER_SIZE + tile % width - bx0;
+        if (local[l] == 0) return;
+        local[l] = 0;
+        localQueue[localTail++] = l;
+    }
+
+    private void runLocal(Passability pass) {
+        for (int head = 0; head < localTail; head++) {
+            int l = localQueue[head];
+            int x = bx0 + l % CLUSTER_SIZE, y = by0 + l / CLUSTER_SIZE;
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = x + DX[dir], ny = y + DY[dir];
+                if (nx < bx0 || ny < by0 || nx >= bx1 || ny >= by1) continue;
+                int nl = (ny - by0) * CLUSTER_SIZE + nx - bx0;
+                if (local[nl] >= 0 || !pass.isPassable(nx, ny)) continue;
+                local[nl] = local[l] + 1;
+                localQueue[localTail++] = nl;
+            }
+        }
+    }
+
+    private int localDistance(int tile) {
+        return local[(tile / width - by0) * CLUSTER_SIZE + tile % width - bx0];
+    }
+
+    private void begin() {
+        if (stamp == null) {
+            int n = nodes.length * MAX_NODES;
+            stamp = new int[n];
+            cost = new int[n];
+            parent = new int[n];
+            goalStamp = new int[n];
+            goalCost = new int[n];
+        }
+        if (++generation == 0) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(goalStamp, 0);
+            generation = 1;
+        }
+        heapSize = 0;
+    }
+
+    private void relax(int id, int tile, int c, int from, Pathfinder.Goal goal) {
+        if (stamp[id] == generation && cost[id] <= c) return;
+        stamp[id] = generation;
+        cost[id] = c;
+        parent[id] = from;
+        push(((long) priority(c, tile, goal) << 32) | (Integer.MAX_VALUE - c), id);
+    }
+
+    // Weighted A*: with the estimate counting a quarter extra, routes come out at most that much longer than the
+    // best one through the entrances, while a plain Manhattan estimate on rough ground would have A* settle a wide
+    // band around the route instead of following it
+    private static int priority(int cost, int tile, Pathfinder.Goal goal) {
+        return cost + goal.estimate(tile) * 5 / 4;
+    }
+
+    private void push(long key, int id) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+            heapIds = Arrays.copyOf(heapIds, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heap[p] <= key) break;
+            heap[i] = heap[p];
+            heapIds[i] = heapIds[p];
+            i = p;
+        }
+        heap[i] = key;
+        heapIds[i] = id;
+    }
+
+    private int pop() {
+        int top = heapIds[0];
+        long last = heap[--heapSize];
+        int lastId = heapIds[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[i] = heap[child];
+            heapIds[i] = heapIds[child];
+            i = child;
+        }
+        heap[i] = last;
+        heapIds[i] = lastId;
+        return top;
+    }
+}
@@ -0,0 +1,40 @@
+package map.path;
+
+// FIFO of ints in a power-of-two ring buffer that doubles when full, so a search only ever holds its frontier
+public final class IntRingQueue {
+    private int[] buf;
+    private int head;
+    private int size;
+
+    public IntRingQueue(int capacity) {
+        this.buf = new int[Integer.highestOneBit(Math.max(2, capacity - 1)) << 1];
+    }
+
+    public boolean isEmpty() { return size == 0; }
+    public int size() { return size; }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public void add(int v) {
+        if (size == buf.length) grow();
+        buf[(head + size) & (buf.length - 1)] = v;
+        size++;
+    }
+
+    public int poll() {
+        int v = buf[head];
+        head = (head + 1) & (buf.length - 1);
+        size--;
+        return v;
+    }
+
+    private void grow() {
+        int[] next = new int[buf.length * 2];
+        for (int k = 0; k < size; k++) next[k] = buf[(head + k) & (buf.length - 1)];
+        buf = next;
+        head = 0;
+    }
+}
@@ -0,0 +1,165 @@
+package map.path;
+
+import map.GameMap;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Breadth-first search over the tile grid, 4-connected. Parent and distance live in int arrays reused by every
+// search; a tile counts as visited only when its stamp equals the current generation, so nothing is cleared
+// between searches. The arrays cover only the box maxDist steps around the start, so a bounded search on a large
+// map needs scratch for its neighbourhood, not the whole map. Results describe the last search until the next one
+// starts. Not thread-safe.
+public class Pathfinder {
+    public interface TileFilter {
+        boolean canEnter(int x, int y);
+    }
+
+    public interface Goal {
+        boolean isGoal(int index);
+
+        // Steps still needed at best, 0 exactly on goals; the lowest one seen is kept for when no goal is reached
+        int estimate(int index);
+    }
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final GameMap map;
+    private final int width;
+    private final int height;
+    private final IntRingQueue queue = new IntRingQueue(256);
+
+    // Indexed by position in the window; grown when a search needs a bigger one
+    private int[] stamp;
+    private int[] parent;
+    private int[] dist;
+    private int generation;
+    private int winX, winY, winW, winH;
+
+    private int start = -1;
+    private int closest = -1;
+
+    public Pathfinder(GameMap map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+    }
+
+    public GameMap getMap() { return map; }
+
+    // First goal tile (other than start) reached within maxDist steps, or -1
+    public int search(int start, int maxDist, TileFilter filter, Goal goal) {
+        begin(start, maxDist);
+        int bestEstimate = goal.estimate(start);
+        while (!queue.isEmpty()) {
+            int cur = queue.poll();
+            if (cur != start) {
+                if (goal.isGoal(cur)) return cur;
+                int e = goal.estimate(cur);
+                if (e < bestEstimate) {
+                    bestEstimate = e;
+                    closest = cur;
+                }
+            }
+            if (dist[slot(cur)] < maxDist) expand(cur, filter);
+        }
+        return -1;
+    }
+
+    // Visits every tile other than start within maxDist steps, nearest first; returns how many there were
+    public int reachable(int start, int maxDist, TileFilter filter, IntConsumer visit) {
+        begin(start, maxDist);
+        int count = 0;
+        while (!queue.isEmpty()) {
+            int cur = queue.poll();
+            if (cur != start) {
+                visit.accept(cur);
+                count++;
+            }
+            if (dist[slot(cur)] < maxDist) expand(cur, filter);
+        }
+        return count;
+    }
+
+    public int getStart() { return start; }
+
+    // Tile with the lowest goal estimate seen by the last search() (ties go to the nearer one), or the start
+    public int getClosest() { return closest; }
+
+    public boolean wasReached(int index) {
+        int s = stamp == null ? -1 : slot(index);
+        return s >= 0 && stamp[s] == generation;
+    }
+
+    // Steps from the start of the last search, or -1 if it didn't get there
+    public int distance(int index) {
+        return wasReached(index) ? dist[slot(index)] : -1;
+    }
+
+    // The k-th tile (0 = first step) on the path from the start to target
+    public int step(int target, int k) {
+        int cur = target;
+        for (int d = dist[slot(target)]; d > k + 1; d--) cur = parent[slot(cur)];
+        return cur;
+    }
+
+    // Writes the path to target into out, first step first and without the start; returns its length or -1
+    public int path(int target, int[] out) {
+        if (!wasReached(target)) return -1;
+        int len = dist[slot(target)];
+        for (int k = len - 1, cur = target; k >= 0; k--, cur = parent[slot(cur)]) out[k] = cur;
+        return len;
+    }
+
+    // Position of a map index in the window, or -1 outside it
+    private int slot(int index) {
+        int x = index % width - winX, y = index / width - winY;
+        return x < 0 || y < 0 || x >= winW || y >= winH ? -1 : y * winW + x;
+    }
+
+    private void begin(int start, int maxDist) {
+        int r = Math.min(maxDist, Math.max(width, height));
+        int sx = start % width, sy = start / width;
+        winX = Math.max(0, sx - r);
+        winY = Math.max(0, sy - r);
+        winW = Math.min(width, sx + r + 1) - winX;
+        winH = Math.min(height, sy + r + 1) - winY;
+        int n = winW * winH;
+        if (stamp == null || stamp.length < n) {
+            stamp = new int[n];
+            parent = new int[n];
+            dist = new int[n];
+            generation = 0;
+        }
+        if (++generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        this.start = start;
+        this.closest = start;
+        queue.clear();
+        int s = slot(start);
+        stamp[s] = generation;
+        parent[s] = -1;
+        dist[s] = 0;
+        queue.add(start);
+    }
+
+    // Neighbours past the window are further than maxDist, so the window edge doubles as the map edge
+    private void expand(int cur, TileFilter filter) {
+        int cx = cur % width, cy = cur / width;
+        int d = dist[slot(cur)] + 1;
+        for (int dir = 0; dir < 4; dir++) {
+            int nx = cx + DX[dir], ny = cy + DY[dir];
+            int lx = nx - winX, ly = ny - winY;
+            if (lx < 0 || ly < 0 || lx >= winW || ly >= winH) continue;
+            int s = ly * winW + lx;
+            if (stamp[s] == generation || !filter.canEnter(nx, ny)) continue;
+            stamp[s] = generation;
+            parent[s] = cur;
+            dist[s] = d;
+            queue.add(ny * width + nx);
+        }
+    }
+}
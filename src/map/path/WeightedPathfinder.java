@@ -0,0 +1,184 @@
+package map.path;
+
+import map.GameMap;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Dijkstra over small integer step costs, 4-connected. Since no step costs more than MAX_STEP_COST, a ring of that
+// many + 1 buckets holds every open tile (Dial's algorithm): pushing and popping are O(1) and a search bounded by a
+// budget touches only the tiles it reaches. Arrays are stamped and windowed like Pathfinder's: every step costs at
+// least 1, so they need only cover the box budget steps around the start. Results describe the last search until
+// the next one starts. Not thread-safe.
+public class WeightedPathfinder {
+    public interface StepCost {
+        // Cost of stepping onto (x, y), 1..MAX_STEP_COST, or negative if it can't be entered
+        int enter(int x, int y);
+    }
+
+    public static final int MAX_STEP_COST = 15;
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+    private static final int BUCKET_MASK = 15;
+
+    private final GameMap map;
+    private final int width;
+    private final int height;
+    private final IntRingQueue[] buckets = new IntRingQueue[BUCKET_MASK + 1];
+    private int pending;
+    private int current;
+
+    // Indexed by position in the window; grown when a search needs a bigger one
+    private int[] stamp;
+    private int[] parent;
+    private int[] cost;
+    private int generation;
+    private int winX, winY, winW, winH;
+
+    private int start = -1;
+    private int closest = -1;
+
+    public WeightedPathfinder(GameMap map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new IntRingQueue(64);
+    }
+
+    public GameMap getMap() { return map; }
+
+    // Cheapest goal tile (other than start) within budget, or -1
+    public int search(int start, int budget, StepCost steps, Pathfinder.Goal goal) {
+        begin(start, budget);
+        int bestEstimate = goal.estimate(start);
+        for (int cur = next(); cur >= 0; cur = next()) {
+            if (cur != start) {
+                if (goal.isGoal(cur)) return cur;
+                int e = goal.estimate(cur);
+                if (e < bestEstimate) {
+                    bestEstimate = e;
+                    closest = cur;
+                }
+            }
+            expand(cur, budget, steps);
+        }
+        return -1;
+    }
+
+    // Visits every tile other than start that costs at most budget to reach, cheapest first; returns how many there
+    // were. The first step is always allowed, so a unit can edge onto a tile that costs more than its whole budget.
+    public int reachable(int start, int budget, StepCost steps, IntConsumer visit) {
+        begin(start, budget);
+        int count = 0;
+        for (int cur = next(); cur >= 0; cur = next()) {
+            if (cur != start) {
+                visit.accept(cur);
+                count++;
+            }
+            expand(cur, budget, steps);
+        }
+        return count;
+    }
+
+    public int getStart() { return start; }
+
+    // Tile with the lowest goal estimate seen by the last search() (ties go to the cheaper one), or the start
+    public int getClosest() { return closest; }
+
+    public boolean wasReached(int index) {
+        int s = stamp == null ? -1 : slot(index);
+        return s >= 0 && stamp[s] == generation;
+    }
+
+    // Cheapest cost from the start of the last search, or -1 if it didn't get there
+    public int cost(int index) {
+        return wasReached(index) ? cost[slot(index)] : -1;
+    }
+
+    // Writes the cheapest path to target into out, first step first and without the start; returns its length in
+    // steps or -1
+    public int path(int target, int[] out) {
+        if (!wasReached(target)) return -1;
+        int len = 0;
+        for (int cur = target; cur != start; cur = parent[slot(cur)]) len++;
+        for (int k = len - 1, cur = target; k >= 0; k--, cur = parent[slot(cur)]) out[k] = cur;
+        return len;
+    }
+
+    // Position of a map index in the window, or -1 outside it
+    private int slot(int index) {
+        int x = index % width - winX, y = index / width - winY;
+        return x < 0 || y < 0 || x >= winW || y >= winH ? -1 : y * winW + x;
+    }
+
+    private void begin(int start, int budget) {
+        int r = Math.max(0, Math.min(budget, Math.max(width, height)));
+        int sx = start % width, sy = start / width;
+        winX = Math.max(0, sx - r);
+        winY = Math.max(0, sy - r);
+        winW = Math.min(width, sx + r + 1) - winX;
+        winH = Math.min(height, sy + r + 1) - winY;
+        int n = winW * winH;
+        if (stamp == null || stamp.length < n) {
+            stamp = new int[n];
+            parent = new int[n];
+            cost = new int[n];
+            generation = 0;
+        }
+        if (++generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        this.start = start;
+        this.closest = start;
+        for (IntRingQueue b : buckets) b.clear();
+        int s = slot(start);
+        stamp[s] = generation;
+        parent[s] = -1;
+        cost[s] = 0;
+        buckets[0].add(start);
+        pending = 1;
+        current = 0;
+    }
+
+    // Next settled tile in cost order, or -1 once nothing is left. A tile queued again at a lower cost leaves its
+    // older entry behind; that one no longer matches the tile's cost when it comes up and is skipped.
+    private int next() {
+        while (pending > 0) {
+            IntRingQueue b = buckets[current & BUCKET_MASK];
+            if (b.isEmpty()) {
+                current++;
+                continue;
+            }
+            int cur = b.poll();
+            pending--;
+            if (cost[slot(cur)] == current) return cur;
+        }
+        return -1;
+    }
+
+    // Neighbours past the window cost more than the budget, so the window edge doubles as the map edge
+    private void expand(int cur, int budget, StepCost steps) {
+        int cx = cur % width, cy = cur / width;
+        int base = cost[slot(cur)];
+        for (int dir = 0; dir < 4; dir++) {
+            int nx = cx + DX[dir], ny = cy + DY[dir];
+            int lx = nx - winX, ly = ny - winY;
+            if (lx < 0 || ly < 0 || lx >= winW || ly >= winH) continue;
+            int s = ly * winW + lx;
+            if (stamp[s] == generation && cost[s] <= base + 1) continue;
+            int c = steps.enter(nx, ny);
+            if (c < 0) continue;
+            if (c == 0 || c > MAX_STEP_COST) throw new IllegalArgumentException("Step cost out of range: " + c);
+            if (cur == start && budget > 0) c = Math.min(c, budget);
+            int nc = base + c;
+            if (nc > budget || (stamp[s] == generation && cost[s] <= nc)) continue;
+            stamp[s] = generation;
+            parent[s] = cur;
+            cost[s] = nc;
+            buckets[nc & BUCKET_MASK].add(ny * width + nx);
+            pending++;
+        }
+    }
+}
@@ -1,14 +1,110 @@
 package player;
 
+import buildings.Building;
 import map.Position;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
 
+// Tiles controlled by one player. Every building projects control over the tiles within its influence radius
+// (Manhattan distance from its footprint). A per-tile coverage count lets a building be removed without
+// recomputing the others; the owned BitSet mirrors count > 0 for fast contains/union/area queries.
 public class TerritoryManager {
-    private final Set<Position> owned = new HashSet<>();
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
 
-    public void claim(Position p) { owned.add(p); }
-    public boolean owns(Position p) { return owned.contains(p); }
-    public Set<Position> snapshot() { return new HashSet<>(owned); }
+    private int width;
+    private int height;
+    private short[][] coverage = new short[0][];
+    private BitSet owned = new BitSet();
+    private int area;
+    private int version;
+
+    // Sizes the layers for a map and drops any previous territory
+    public void attach(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.coverage = new short[(width * height + BLOCK_MASK) >>> BLOCK_SHIFT][];
+        this.owned = new BitSet(width * height);
+        this.area = 0;
+    }
+
+    // Heap attach() commits to on a width x height map; coverage blocks come on top as buildings project
+    public static long estimateBytes(int width, int height) {
+        long n = (long) width * height;
+        return n / 8 + ((n + BLOCK_MASK) >>> BLOCK_SHIFT) * 8;
+    }
+
+    public void addBuilding(Building b) { project(b, 1); }
+    public void removeBuilding(Building b) { project(b, -1); }
+
+    public void claim(Position p) {
+        if (inside(p.x, p.y)) adjust(p.y * width + p.x, 1);
+    }
+
+    public boolean owns(Position p) { return owns(p.x, p.y); }
+
+    public boolean owns(int x, int y) {
+        return inside(x, y) && owned.get(y * width + x);
+    }
+
+    public int getArea() { return area; }
+
+    // Bumped whenever a building is projected or withdrawn
+    public int getVersion() { return version; }
+
+    public BitSet snapshot() { return (BitSet) owned.clone(); }
+
+    public BitSet union(TerritoryManager other) {
+        BitSet out = snapshot();
+        out.or(other.owned);
+        return out;
+    }
+
+    public int contestedArea(TerritoryManager other) {
+        BitSet out = snapshot();
+        out.and(other.owned);
+        return out.cardinality();
+    }
+
+    private void project(Building b, int delta) {
+        Position tl = b.getPosition();
+        if (tl == null || width == 0) return;
+        version++;
+        int r = b.getType().getInfluenceRadius();
+        int fx0 = tl.x, fy0 = tl.y, fx1 = tl.x + b.getWidth() - 1, fy1 = tl.y + b.getHeight() - 1;
+
+        int y0 = Math.max(0, fy0 - r), y1 = Math.min(height - 1, fy1 + r);
+        int x0 = Math.max(0, fx0 - r), x1 = Math.min(width - 1, fx1 + r);
+        for (int y = y0; y <= y1; y++) {
+            int dy = Math.max(0, Math.max(fy0 - y, y - fy1));
+            for (int x = x0; x <= x1; x++) {
+                int dx = Math.max(0, Math.max(fx0 - x, x - fx1));
+                if (dx + dy <= r) adjust(y * width + x, delta);
+            }
+        }
+    }
+
+    private void adjust(int i, int delta) {
+        short[] block = coverage[i >>> BLOCK_SHIFT];
+        int before = block == null ? 0 : block[i & BLOCK_MASK];
+        int after = before + delta;
+        // Only a building removed twice, or never added, takes a tile below zero
+        if (after < 0) throw new IllegalStateException("Territory coverage below zero at tile " + i);
+        if (block == null) {
+            block = new short[1 << BLOCK_SHIFT];
+            coverage[i >>> BLOCK_SHIFT] = block;
+        }
+        block[i & BLOCK_MASK] = (short) after;
+        if (before == 0 && after > 0) {
+            owned.set(i);
+            area++;
+        } else if (before > 0 && after == 0) {
+            owned.clear(i);
+            area--;
+        }
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
 }
@@ -50,6 +50,18 @@ public class GameSerializer {
                     .append(u.hits).append("\n");
         }
 
+        sb.append("D ").append(d.deposits.size()).append("\n");
+        for (var r : d.deposits) {
+            sb.append(r.x).append(" ").append(r.y).append(" ").append(r.remaining).append("\n");
+        }
+
+        sb.append("G ").append(d.regrowth.size()).append("\n");
+        for (var r : d.regrowth) {
+            sb.append(r.type.name()).append(" ")
+                    .append(r.x).append(" ").append(r.y).append(" ")
+                    .append(r.due).append("\n");
+        }
+
         return sb.toString();
     }
 
@@ -139,6 +151,32 @@ public class GameSerializer {
             d.units.add(ur);
         }
 
+        // Deposit and regrowth sections are optional so older saves still load
+        if (idx < lines.length && lines[idx].startsWith("D ")) {
+            int n = Integer.parseInt(lines[idx++].substring(2).trim());
+            for (int i = 0; i < n; i++) {
+                StringTokenizer st = new StringTokenizer(lines[idx++]);
+                SaveData.DepositRec r = new SaveData.DepositRec();
+                r.x = Integer.parseInt(st.nextToken());
+                r.y = Integer.parseInt(st.nextToken());
+                r.remaining = Integer.parseInt(st.nextToken());
+                d.deposits.add(r);
+            }
+        }
+
+        if (idx < lines.length && lines[idx].startsWith("G ")) {
+            int n = Integer.parseInt(lines[idx++].substring(2).trim());
+            for (int i = 0; i < n; i++) {
+                StringTokenizer st = new StringTokenizer(lines[idx++]);
+                SaveData.RegrowthRec r = new SaveData.RegrowthRec();
+                r.type = TileType.valueOf(st.nextToken());
+                r.x = Integer.parseInt(st.nextToken());
+                r.y = Integer.parseInt(st.nextToken());
+                r.due = Integer.parseInt(st.nextToken());
+                d.regrowth.add(r);
+            }
+        }
+
         return d;
     }
 }
@@ -37,6 +37,23 @@ public class SaveData {
         public int hits;
     }
 
+    // Partly harvested tiles
+    public static class DepositRec {
+        public int x;
+        public int y;
+        public int remaining;
+    }
+
+    // Depleted tiles waiting to grow back
+    public static class RegrowthRec {
+        public int x;
+        public int y;
+        public TileType type;
+        public int due;
+    }
+
     public List<BuildingRec> buildings = new ArrayList<>();
     public List<UnitRec> units = new ArrayList<>();
+    public List<DepositRec> deposits = new ArrayList<>();
+    public List<RegrowthRec> regrowth = new ArrayList<>();
 }
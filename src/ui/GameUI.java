@@ -9,6 +9,8 @@ public interface GameUI {
     void bindContext(GameContext ctx);
 
     void showMainMenu();
+    // Something slow (map generation) is running off the UI thread; cleared by the next show*() call
+    void showLoading();
     void showGame();
     void showVictory();
     void showDefeat();
@@ -16,5 +18,8 @@ public interface GameUI {
     void render();
     void notifyEvent(String msg);
 
+    // Runs task on the UI thread; results finished elsewhere are handed back through this
+    void runLater(Runnable task);
+
     boolean requestBuildPlacement(Building b);
 }
@@ -1,14 +1,18 @@
 package ui;
 
 import buildings.Building;
+import buildings.BuildingType;
+import game.FogOfWar;
 import game.Game;
 import game.GameContext;
 import game.TurnManager;
+import map.DirtyTracker;
 import map.GameMap;
 import map.Position;
 import map.Tile;
+import player.Player;
+import player.TerritoryManager;
 import resources.ResourceType;
-import units.UnitType;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -18,6 +22,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
+import java.util.BitSet;
 import java.util.EnumMap;
 
 public class SwingUI extends JFrame implements GameUI {
@@ -50,6 +55,7 @@ public class SwingUI extends JFrame implements GameUI {
     private final JButton trainSoldierBtn = new PressButton("Train Soldier");
     private final JButton trainArcherBtn = new PressButton("Train Archer");
     private final JButton trainCavalryBtn = new PressButton("Train Cavalry");
+    private final JButton trainSiegeBtn = new PressButton("Train Siege");
 
     private final JButton buildFarmBtn = new PressButton("Build Farm");
     private final JButton buildMineBtn = new PressButton("Build Mine");
@@ -118,24 +124,33 @@ public class SwingUI extends JFrame implements GameUI {
 
     @Override
     public void showMainMenu() {
+        setCursor(Cursor.getDefaultCursor());
         cards.show(root, "MENU");
         repaint();
     }
 
+    @Override
+    public void showLoading() {
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+    }
+
     @Override
     public void showGame() {
+        setCursor(Cursor.getDefaultCursor());
         cards.show(root, "GAME");
         repaint();
     }
 
     @Override
     public void showVictory() {
+        setCursor(Cursor.getDefaultCursor());
         cards.show(root, "VICTORY");
         repaint();
     }
 
     @Override
     public void showDefeat() {
+        setCursor(Cursor.getDefaultCursor());
         cards.show(root, "DEFEAT");
         repaint();
     }
@@ -144,7 +159,7 @@ public class SwingUI extends JFrame implements GameUI {
     public void render() {
         updateTopBar();
         updateBottomBarButtons();
-        mapPanel.repaint();
+        mapPanel.refresh();
     }
 
     @Override
@@ -152,6 +167,11 @@ public class SwingUI extends JFrame implements GameUI {
         statusLabel.setText(msg == null ? " " : msg);
     }
 
+    @Override
+    public void runLater(Runnable task) {
+        SwingUtilities.invokeLater(task);
+    }
+
     @Override
     public boolean requestBuildPlacement(Building b) {
         pendingPlacement = b;
@@ -305,6 +325,7 @@ public class SwingUI extends JFrame implements GameUI {
         trainSoldierBtn.addActionListener(e -> { if (game != null) game.trainSoldier(); });
         trainArcherBtn.addActionListener(e -> { if (game != null) game.trainArcher(); });
         trainCavalryBtn.addActionListener(e -> { if (game != null) game.trainCavalry(); });
+        trainSiegeBtn.addActionListener(e -> { if (game != null) game.trainSiege(); });
 
         buildFarmBtn.addActionListener(e -> { if (game != null) game.buildFarm(); });
         buildMineBtn.addActionListener(e -> { if (game != null) game.buildMine(); });
@@ -313,6 +334,7 @@ public class SwingUI extends JFrame implements GameUI {
         left.add(trainSoldierBtn);
         left.add(trainArcherBtn);
         left.add(trainCavalryBtn);
+        left.add(trainSiegeBtn);
 
         left.add(Box.createHorizontalStrut(16));
 
@@ -371,6 +393,7 @@ public class SwingUI extends JFrame implements GameUI {
         trainSoldierBtn.setEnabled(enabled && mode != ActionMode.BUILD);
         trainArcherBtn.setEnabled(enabled && mode != ActionMode.BUILD);
         trainCavalryBtn.setEnabled(enabled && mode != ActionMode.BUILD);
+        trainSiegeBtn.setEnabled(enabled && mode != ActionMode.BUILD);
 
         buildFarmBtn.setEnabled(enabled && mode != ActionMode.BUILD);
         buildMineBtn.setEnabled(enabled && mode != ActionMode.BUILD);
@@ -404,32 +427,34 @@ public class SwingUI extends JFrame implements GameUI {
 
     private boolean existsCollectTarget(Position from) {
         if (game == null || ctx == null || from == null) return false;
-        int w = ctx.getMap().getWidth(), h = ctx.getMap().getHeight();
-        for (int y = 0; y < h; y++) for (int x = 0; x < w; x++) {
-            if (game.canCollectTarget(from, new Position(x, y))) return true;
-        }
-        return false;
+        return !game.collectTargets(from).isEmpty();
     }
 
     private boolean existsAttackTarget(Position from) {
         if (game == null || ctx == null || from == null) return false;
-        int w = ctx.getMap().getWidth(), h = ctx.getMap().getHeight();
-        for (int y = 0; y < h; y++) for (int x = 0; x < w; x++) {
-            if (game.canAttackTarget(from, new Position(x, y))) return true;
-        }
-        return false;
+        return !game.attackTargets(from).isEmpty();
     }
 
     private class MapPanel extends JPanel {
     	private static final long serialVersionUID = 1L;
 
         private GameContext ctx;
+        private DirtyTracker dirty;
         private final int tileSize = 64;
 
+        // Overlay state of the last paint; if any of it changes the whole panel must be repainted
+        private Position paintedSelected;
+        private ActionMode paintedMode;
+        private Building paintedPlacement;
+        private boolean paintedHumanTurn;
+        private int paintedTerritory;
+        private int paintedFog;
+
         private final BufferedImage grass = loadImage("/assets/tiles/grass.png");
         private final BufferedImage water = loadImage("/assets/tiles/water.png");
         private final BufferedImage forest = loadImage("/assets/tiles/forest.png");
         private final BufferedImage mountain = loadImage("/assets/tiles/mountain.png");
+        private final BufferedImage road = loadImage("/assets/tiles/road.png");
 
         private final BufferedImage castle = loadImage("/assets/buildings/castle.png");
         private final BufferedImage barracks = loadImage("/assets/buildings/barracks.png");
@@ -456,7 +481,7 @@ public class SwingUI extends JFrame implements GameUI {
                     Tile t = ctx.getMap().getTile(x, y);
                     if (t == null) return;
 
-                    Position clicked = new Position(x, y);
+                    Position clicked = ctx.getMap().pos(x, y);
 
                     if (mode == ActionMode.BUILD && pendingPlacement != null) {
                         game.placePendingBuilding(clicked);
@@ -515,7 +540,8 @@ public class SwingUI extends JFrame implements GameUI {
                         return;
                     }
 
-                    if (t.getUnit() != null && t.getUnit().getOwner() == ctx.getHuman()) {
+                    // Clicking another tile of the selected big unit moves it there
+                    if (t.getUnit() != null && t.getUnit().getOwner() == ctx.getHuman() && t.getUnit() != selT.getUnit()) {
                         selected = clicked;
                         mode = ActionMode.NONE;
                         render();
@@ -533,13 +559,43 @@ public class SwingUI extends JFrame implements GameUI {
         }
 
         public void setContext(GameContext ctx) {
+            if (this.ctx != null && dirty != null) this.ctx.getMap().removeListener(dirty);
             this.ctx = ctx;
+            this.dirty = ctx == null ? null : ctx.getMap().newDirtyTracker();
             if (ctx == null) setPreferredSize(new Dimension(800, 600));
             else setPreferredSize(new Dimension(ctx.getMap().getWidth() * tileSize, ctx.getMap().getHeight() * tileSize));
             revalidate();
             repaint();
         }
 
+        // Repaints only the map regions that changed since the last render, unless the overlay changed or one is
+        // showing: a move range, target set or placement sites can change well outside the regions that did
+        public void refresh() {
+            if (ctx == null || dirty == null) {
+                repaint();
+                return;
+            }
+
+            boolean humanTurn = tm != null && tm.isHumanTurn();
+            boolean overlay = selected != null || (mode == ActionMode.BUILD && pendingPlacement != null);
+            if (overlay || selected != paintedSelected || mode != paintedMode || pendingPlacement != paintedPlacement || humanTurn != paintedHumanTurn
+                    || territoryVersion() != paintedTerritory || ctx.getFog().getVersion(ctx.getHuman()) != paintedFog) {
+                dirty.drainRegions();
+                repaint();
+                return;
+            }
+
+            BitSet regions = dirty.drainRegions();
+            int size = DirtyTracker.REGION_SIZE * tileSize;
+            for (int r = regions.nextSetBit(0); r >= 0; r = regions.nextSetBit(r + 1)) {
+                repaint(dirty.regionX(r) * tileSize, dirty.regionY(r) * tileSize, size, size);
+            }
+        }
+
+        private int territoryVersion() {
+            return ctx.getHuman().getTerritory().getVersion() * 31 + ctx.getEnemy().getTerritory().getVersion();
+        }
+
         private BufferedImage loadImage(String path) {
             try (InputStream in = getClass().getResourceAsStream(path)) {
                 if (in == null) return null;
@@ -554,74 +610,117 @@ public class SwingUI extends JFrame implements GameUI {
             super.paintComponent(g);
             if (ctx == null) return;
 
+            paintedSelected = selected;
+            paintedMode = mode;
+            paintedPlacement = pendingPlacement;
+            paintedHumanTurn = tm != null && tm.isHumanTurn();
+            paintedTerritory = territoryVersion();
+            paintedFog = ctx.getFog().getVersion(ctx.getHuman());
+
             Graphics2D g2 = (Graphics2D) g.create();
             g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
 
             GameMap map = ctx.getMap();
 
-            for (int yy = 0; yy < map.getHeight(); yy++) {
-                for (int xx = 0; xx < map.getWidth(); xx++) {
-                    Tile t = map.getTile(xx, yy);
-                    if (t == null) continue;
-
-                    BufferedImage tileImg = switch (t.getType()) {
-                        case GRASS -> grass;
-                        case WATER -> water;
-                        case FOREST -> forest;
-                        case MOUNTAIN -> mountain;
-                    };
+            // Only walk the tiles inside the clip; start earlier so buildings anchored off-clip still get drawn
+            Rectangle clip = g2.getClipBounds();
+            if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+            int reach = BuildingType.maxFootprint() - 1;
+            int x0 = Math.max(0, clip.x / tileSize - reach);
+            int y0 = Math.max(0, clip.y / tileSize - reach);
+            int x1 = Math.min(map.getWidth(), (clip.x + clip.width) / tileSize + 1);
+            int y1 = Math.min(map.getHeight(), (clip.y + clip.height) / tileSize + 1);
+
+            Color gridLine = new Color(0, 0, 0, 40);
+            map.forEachInRegion(x0, y0, x1, y1, (xx, yy, i) -> {
+                BufferedImage tileImg = switch (map.getType(xx, yy)) {
+                    case GRASS -> grass;
+                    case WATER -> water;
+                    case FOREST -> forest;
+                    case MOUNTAIN -> mountain;
+                    case ROAD -> road;
+                };
+
+                if (tileImg != null) g2.drawImage(tileImg, xx * tileSize, yy * tileSize, tileSize, tileSize, null);
+                else {
+                    g2.setColor(Color.GRAY);
+                    g2.fillRect(xx * tileSize, yy * tileSize, tileSize, tileSize);
+                }
 
-                    if (tileImg != null) g2.drawImage(tileImg, xx * tileSize, yy * tileSize, tileSize, tileSize, null);
-                    else {
-                        g2.setColor(Color.GRAY);
-                        g2.fillRect(xx * tileSize, yy * tileSize, tileSize, tileSize);
-                    }
+                g2.setColor(gridLine);
+                g2.drawRect(xx * tileSize, yy * tileSize, tileSize, tileSize);
+            });
 
-                    g2.setColor(new Color(0, 0, 0, 40));
-                    g2.drawRect(xx * tileSize, yy * tileSize, tileSize, tileSize);
+            // Territory tint: blue for the player, red for the enemy (both where contested)
+            Color humanLand = new Color(70, 130, 255, 35);
+            Color enemyLand = new Color(255, 70, 70, 35);
+            TerritoryManager humanTerritory = ctx.getHuman().getTerritory();
+            TerritoryManager enemyTerritory = ctx.getEnemy().getTerritory();
+            map.forEachInRegion(x0, y0, x1, y1, (xx, yy, i) -> {
+                if (humanTerritory.owns(xx, yy)) {
+                    g2.setColor(humanLand);
+                    g2.fillRect(xx * tileSize, yy * tileSize, tileSize, tileSize);
                 }
-            }
-
-            for (int yy = 0; yy < map.getHeight(); yy++) {
-                for (int xx = 0; xx < map.getWidth(); xx++) {
-                    Tile t = map.getTile(xx, yy);
-                    if (t == null) continue;
-
-                    Building b = t.getBuilding();
-                    if (b != null && b.getPosition() != null && b.getPosition().x == xx && b.getPosition().y == yy) {
-                        BufferedImage bi = switch (b.getType()) {
-                            case CASTLE -> castle;
-                            case BARRACKS -> barracks;
-                            case FARM -> farm;
-                            case MINE -> mine;
-                        };
-                        if (bi != null) g2.drawImage(bi, xx * tileSize, yy * tileSize, tileSize * 2, tileSize * 2, null);
-                    }
+                if (enemyTerritory.owns(xx, yy)) {
+                    g2.setColor(enemyLand);
+                    g2.fillRect(xx * tileSize, yy * tileSize, tileSize, tileSize);
                 }
-            }
+            });
 
-            for (int yy = 0; yy < map.getHeight(); yy++) {
-                for (int xx = 0; xx < map.getWidth(); xx++) {
-                    Tile t = map.getTile(xx, yy);
-                    if (t == null) continue;
-                    var u = t.getUnit();
-                    if (u == null) continue;
-
-                    BufferedImage ui = switch (u.getType()) {
-                        case SOLDIER -> soldier;
-                        case ARCHER -> archer;
-                        case CAVALRY -> cavalry;
+            map.forEachInRegion(x0, y0, x1, y1, (xx, yy, i) -> {
+                Building b = map.getBuilding(xx, yy);
+                if (b != null && b.getPosition() != null && b.getPosition().x == xx && b.getPosition().y == yy) {
+                    BufferedImage bi = switch (b.getType()) {
+                        case CASTLE -> castle;
+                        case BARRACKS -> barracks;
+                        case FARM -> farm;
+                        case MINE -> mine;
                     };
+                    if (bi != null) g2.drawImage(bi, xx * tileSize, yy * tileSize, tileSize * b.getWidth(), tileSize * b.getHeight(), null);
+                }
+            });
 
-                    int px = xx * tileSize;
-                    int py = yy * tileSize;
-
-                    if (ui != null) g2.drawImage(ui, px, py, tileSize, tileSize, null);
+            FogOfWar fog = ctx.getFog();
+            Player viewer = ctx.getHuman();
+            map.forEachInRegion(x0, y0, x1, y1, (xx, yy, i) -> {
+                var u = map.getUnit(xx, yy);
+                if (u == null) return;
+                if (u.getOwner() != viewer && !fog.isVisible(viewer, xx, yy)) return;
+                // Big units are drawn once, from their top-left tile
+                if (u.isBig() && (u.getPos() == null || u.getPos().x != xx || u.getPos().y != yy)) return;
+
+                BufferedImage ui = switch (u.getType()) {
+                    case SOLDIER -> soldier;
+                    case ARCHER -> archer;
+                    case CAVALRY -> cavalry;
+                    case SIEGE -> null;
+                };
+
+                int px = xx * tileSize;
+                int py = yy * tileSize;
+                int side = tileSize * u.getSize();
+
+                if (ui != null) g2.drawImage(ui, px, py, side, side, null);
+                else {
+                    g2.setColor(new Color(90, 60, 35));
+                    g2.fillRoundRect(px + 4, py + 4, side - 8, side - 8, 12, 12);
+                    g2.setColor(u.getOwner() == viewer ? new Color(70, 130, 255) : new Color(255, 70, 70));
+                    g2.setStroke(new BasicStroke(3f));
+                    g2.drawRoundRect(px + 4, py + 4, side - 8, side - 8, 12, 12);
                 }
-            }
+            });
+
+            // Fog: black where never seen, dimmed where explored but not currently in sight
+            Color unexplored = Color.BLACK;
+            Color remembered = new Color(0, 0, 0, 120);
+            map.forEachInRegion(x0, y0, x1, y1, (xx, yy, i) -> {
+                if (fog.isVisible(viewer, xx, yy)) return;
+                g2.setColor(fog.isExplored(viewer, xx, yy) ? remembered : unexplored);
+                g2.fillRect(xx * tileSize, yy * tileSize, tileSize, tileSize);
+            });
 
             if (mode == ActionMode.BUILD && pendingPlacement != null) {
-                drawBuildPlacements(g2);
+                drawBuildPlacements(g2, x0, y0, x1, y1);
             }
 
             // Green reachable tiles when selecting a unit (normal mode)
@@ -641,58 +740,40 @@ public class SwingUI extends JFrame implements GameUI {
             g2.dispose();
         }
 
-        private void drawBuildPlacements(Graphics2D g2) {
+        private void drawBuildPlacements(Graphics2D g2, int x0, int y0, int x1, int y1) {
             if (ctx == null) return;
+            GameMap map = ctx.getMap();
+            int bw = pendingPlacement.getWidth(), bh = pendingPlacement.getHeight();
             g2.setColor(new Color(80, 255, 160, 60));
-            for (int y = 0; y < ctx.getMap().getHeight(); y++) {
-                for (int x = 0; x < ctx.getMap().getWidth(); x++) {
-                    Position p = new Position(x, y);
-                    if (ctx.canPlaceBuilding(pendingPlacement, p, ctx.getHuman())) {
-                        g2.fillRect(x * tileSize, y * tileSize, tileSize * 2, tileSize * 2);
-                    }
-                }
-            }
+            map.getPlacementIndex().forEachSite(x0, y0, x1, y1, bw, bh, i ->
+                    g2.fillRect(map.xOf(i) * tileSize, map.yOf(i) * tileSize, tileSize * bw, tileSize * bh));
         }
 
-        // Highlights valid movement tiles in green
+        // Highlights valid movement tiles in green: the unit's cached move range, the same one the move rule checks
         private void drawMovableTargets(Graphics2D g2, Position from) {
             Tile t = ctx.getMap().getTile(from.x, from.y);
             if (t == null || t.getUnit() == null) return;
             if (t.getUnit().getOwner() != ctx.getHuman()) return;
 
-            int max = (t.getUnit().getType() == UnitType.CAVALRY) ? 2 : 1;
             g2.setColor(new Color(80, 255, 80, 80));
-
-            for (int y = 0; y < ctx.getMap().getHeight(); y++) {
-                for (int x = 0; x < ctx.getMap().getWidth(); x++) {
-                    int dist = Math.abs(x - from.x) + Math.abs(y - from.y);
-                    if (dist < 1 || dist > max) continue;
-
-                    Position p = new Position(x, y);
-                    if (ctx.isFreeForUnit(p, false)) {
-                        g2.fillRect(x * tileSize, y * tileSize, tileSize, tileSize);
-                    }
-                }
-            }
+            GameMap map = ctx.getMap();
+            ctx.getMoveRange(t.getUnit()).forEach(
+                    i -> g2.fillRect(map.xOf(i) * tileSize, map.yOf(i) * tileSize, tileSize, tileSize));
         }
 
         private void drawAttackableTargets(Graphics2D g2, Position from) {
+            if (game == null) return;
             g2.setColor(new Color(255, 80, 80, 70));
-            for (int y = 0; y < ctx.getMap().getHeight(); y++) {
-                for (int x = 0; x < ctx.getMap().getWidth(); x++) {
-                    Position p = new Position(x, y);
-                    if (game != null && game.canAttackTarget(from, p)) g2.fillRect(x * tileSize, y * tileSize, tileSize, tileSize);
-                }
+            for (Position p : game.attackTargets(from)) {
+                g2.fillRect(p.x * tileSize, p.y * tileSize, tileSize, tileSize);
             }
         }
 
         private void drawCollectableTargets(Graphics2D g2, Position from) {
+            if (game == null) return;
             g2.setColor(new Color(80, 255, 160, 60));
-            for (int y = 0; y < ctx.getMap().getHeight(); y++) {
-                for (int x = 0; x < ctx.getMap().getWidth(); x++) {
-                    Position p = new Position(x, y);
-                    if (game != null && game.canCollectTarget(from, p)) g2.fillRect(x * tileSize, y * tileSize, tileSize, tileSize);
-                }
+            for (Position p : game.collectTargets(from)) {
+                g2.fillRect(p.x * tileSize, p.y * tileSize, tileSize, tileSize);
             }
         }
     }
@@ -0,0 +1,20 @@
+package units;
+
+import player.Player;
+import resources.ResourceType;
+
+import java.util.EnumMap;
+
+public class Siege extends Unit {
+    public Siege(Player owner) {
+        super(UnitType.SIEGE, owner, 6, 3, 25, cost());
+    }
+
+    private static EnumMap<ResourceType, Integer> cost() {
+        EnumMap<ResourceType, Integer> c = new EnumMap<>(ResourceType.class);
+        c.put(ResourceType.WOOD, 40);
+        c.put(ResourceType.STONE, 20);
+        c.put(ResourceType.GOLD, 20);
+        return c;
+    }
+}
@@ -12,7 +12,6 @@ public class Unit {
     private final EnumMap<ResourceType, Integer> cost;
 
     private Position pos;
-    private boolean big;
     private int hitsRemaining;
     private int range;
     private int hitPower;
@@ -24,7 +23,6 @@ public class Unit {
         this.range = Math.max(1, range);
         this.hitPower = Math.max(1, hitPower);
         this.cost = cost;
-        this.big = false;
     }
 
     public UnitType getType() { return type; }
@@ -34,10 +32,13 @@ public class Unit {
     public Position getPos() { return pos; }
     public void setPos(Position pos) { this.pos = pos; }
 
-    public boolean isBig() { return big; }
-    public void setBig(boolean big) { this.big = big; }
+    // Big units cover a getSize() square whose top-left tile is getPos()
+    public boolean isBig() { return getSize() > 1; }
+
+    public int getSize() { return type.getSize(); }
 
     public int getRange() { return range; }
+    public int getSight() { return type.getSight(); }
     public int hitPower() { return hitPower; }
 
     public int getHitsRemaining() { return hitsRemaining; }
@@ -8,6 +8,7 @@ public class UnitFactory {
             case SOLDIER -> new Soldier(owner);
             case ARCHER -> new Archer(owner);
             case CAVALRY -> new Cavalry(owner);
+            case SIEGE -> new Siege(owner);
         };
     }
 }
@@ -1,5 +1,35 @@
 package units;
 
+import map.Passability;
+import map.TileType;
+
 public enum UnitType {
-    SOLDIER, ARCHER, CAVALRY
+    SOLDIER(3, 1, 2, true), ARCHER(4, 1, 2, true), CAVALRY(4, 1, 4, false), SIEGE(3, 2, 2, false);
+
+    private final int sight;
+    private final int size;
+    private final int movePoints;
+    private final boolean woodland;
+
+    UnitType(int sight, int size, int movePoints, boolean woodland) {
+        this.sight = sight;
+        this.size = size;
+        this.movePoints = movePoints;
+        this.woodland = woodland;
+    }
+
+    public int getSight() { return sight; }
+
+    // Side of the square footprint in tiles
+    public int getSize() { return size; }
+
+    // Spent per turn on TileType move costs: one grass tile for most units, two for cavalry
+    public int getMovePoints() { return movePoints; }
+
+    // Infantry also makes its way through forest
+    public boolean isWoodland() { return woodland; }
+
+    public boolean canEnter(TileType t) {
+        return Passability.opens(t, woodland);
+    }
 }